@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) Copyright (C)
+ * 2009 Royal Institute of Technology (KTH)
+ *
+ * GVoD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.kth.swim.benchmark;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.HashSet;
+import java.util.Set;
+import se.sics.p2ptoolbox.util.network.NatType;
+import se.sics.p2ptoolbox.util.network.NatedAddress;
+import se.sics.p2ptoolbox.util.network.impl.BasicAddress;
+import se.sics.p2ptoolbox.util.network.impl.BasicNatedAddress;
+
+/**
+ * Node addresses laid out like SwimScenario does: even ids are open, odd ids
+ * are NATed behind the first few open nodes.
+ */
+final class Addresses {
+
+    private static final int PARENTS = 3;
+
+    private Addresses() {
+    }
+
+    static NatedAddress[] create(int count) {
+        InetAddress localHost;
+        try {
+            localHost = InetAddress.getByName("127.0.0.1");
+        } catch (UnknownHostException ex) {
+            throw new RuntimeException(ex);
+        }
+        Set<NatedAddress> parents = new HashSet<NatedAddress>();
+        NatedAddress[] nodes = new NatedAddress[count];
+        for (int i = 0; i < count; i++) {
+            int id = i + 1;
+            if (id % 2 == 0 || parents.size() < PARENTS) {
+                nodes[i] = new BasicNatedAddress(new BasicAddress(localHost, 12345, id));
+                if (parents.size() < PARENTS) {
+                    parents.add(nodes[i]);
+                }
+            } else {
+                nodes[i] = new BasicNatedAddress(new BasicAddress(localHost, 12345, id), NatType.NAT, parents);
+            }
+        }
+        return nodes;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) Copyright (C)
+ * 2009 Royal Institute of Technology (KTH)
+ *
+ * GVoD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.kth.swim.benchmark;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import se.kth.swim.msg.net.ByteBufferPool;
+import se.kth.swim.msg.net.InfoPiggyback;
+import se.kth.swim.msg.net.InfoType;
+import se.kth.swim.msg.net.NetMsg;
+import se.kth.swim.msg.net.NetMsgCodec;
+import se.kth.swim.msg.net.NetPong;
+import se.sics.p2ptoolbox.util.network.NatedAddress;
+
+/**
+ * Encoding and decoding a pong carrying a full piggyback.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+
+    @Param({"0", "10", "50"})
+    public int updates;
+
+    private NetMsgCodec codec;
+    private NetPong pong;
+    private ByteBuffer encoded;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        NatedAddress[] nodes = Addresses.create(updates + 2);
+        ArrayList<InfoPiggyback> infoList = new ArrayList<InfoPiggyback>();
+        InfoType[] types = InfoType.values();
+        for (int i = 0; i < updates; i++) {
+            infoList.add(new InfoPiggyback(types[i % types.length], nodes[i + 2], i / 4));
+        }
+        pong = new NetPong(nodes[0], nodes[1], infoList);
+        codec = new NetMsgCodec(new ByteBufferPool(64 * 1024, 16));
+        encoded = codec.encode(pong);
+    }
+
+    @Benchmark
+    public int encode() {
+        ByteBuffer buf = codec.encode(pong);
+        int size = buf.remaining();
+        codec.release(buf);
+        return size;
+    }
+
+    @Benchmark
+    public NetMsg<?> decode() {
+        return codec.decode(encoded.duplicate());
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) Copyright (C)
+ * 2009 Royal Institute of Technology (KTH)
+ *
+ * GVoD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.kth.swim.benchmark;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import se.kth.swim.DisseminationBuffer;
+import se.kth.swim.SwimConfig;
+import se.kth.swim.msg.net.InfoPiggyback;
+import se.kth.swim.msg.net.InfoType;
+import se.sics.p2ptoolbox.util.network.NatedAddress;
+
+/**
+ * Queueing an update and packing the piggyback of one outgoing message, the
+ * work SwimComp does per ping/pong.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DisseminationBufferBenchmark {
+
+    @Param({"100", "10000", "100000"})
+    public int size;
+
+    private DisseminationBuffer buffer;
+    private InfoPiggyback[] updates;
+    private int cursor = 0;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        NatedAddress[] nodes = Addresses.create(size);
+        updates = new InfoPiggyback[size];
+        for (int i = 0; i < size; i++) {
+            updates[i] = new InfoPiggyback(InfoType.SUSPECTEDNODE, nodes[i], i);
+        }
+        buffer = new DisseminationBuffer(SwimConfig.DEFAULT_DISSEMINATION_LAMBDA, SwimConfig.DEFAULT_MAX_PIGGYBACK);
+        //start from a backlog of pending gossip, as after churn
+        for (int i = 0; i < Math.min(size, 1000); i++) {
+            buffer.add(updates[i]);
+        }
+    }
+
+    @Benchmark
+    public ArrayList<InfoPiggyback> addAndPack() {
+        buffer.add(updates[cursor]);
+        if (++cursor == size) {
+            cursor = 0;
+        }
+        return buffer.nextPiggyback(size);
+    }
+}
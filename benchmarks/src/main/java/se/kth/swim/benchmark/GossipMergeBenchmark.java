@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) Copyright (C)
+ * 2009 Royal Institute of Technology (KTH)
+ *
+ * GVoD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.kth.swim.benchmark;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import se.kth.swim.DisseminationBuffer;
+import se.kth.swim.MembershipList;
+import se.kth.swim.SwimConfig;
+import se.kth.swim.msg.net.InfoPiggyback;
+import se.kth.swim.msg.net.InfoType;
+import se.sics.p2ptoolbox.util.network.NatedAddress;
+
+/**
+ * Merging the gossip of one incoming message. SwimComp.mergeUpdates cannot
+ * run outside a Kompics component, so this repeats its membership and buffer
+ * operations: lookup, precedence check, state update and re-dissemination.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GossipMergeBenchmark {
+
+    @Param({"100", "10000", "100000"})
+    public int size;
+
+    private MembershipList membershipList;
+    private DisseminationBuffer buffer;
+    private NatedAddress[] nodes;
+    private int cursor = 0;
+    private int incarnation = 0;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        nodes = Addresses.create(size + 1);
+        membershipList = new MembershipList(new HashSet<NatedAddress>(), nodes[size]);
+        for (int i = 0; i < size; i++) {
+            membershipList.add(nodes[i]);
+        }
+        buffer = new DisseminationBuffer(SwimConfig.DEFAULT_DISSEMINATION_LAMBDA, SwimConfig.DEFAULT_MAX_PIGGYBACK);
+    }
+
+    @Benchmark
+    public int merge() {
+        ArrayList<InfoPiggyback> infoList = nextMessage();
+        for (InfoPiggyback ipb : infoList) {
+            NatedAddress target = ipb.getInfoTarget();
+            if (!membershipList.contains(target)) {
+                continue;
+            }
+            InfoType known = membershipList.isSuspected(target) ? InfoType.SUSPECTEDNODE : InfoType.ALIVENODE;
+            if (!InfoPiggyback.overrides(ipb.getInfoType(), ipb.getIncarnationValue(), known, membershipList.getIncarnation(target))) {
+                continue;
+            }
+            membershipList.setIncarnation(target, ipb.getIncarnationValue());
+            if (ipb.getInfoType() == InfoType.SUSPECTEDNODE) {
+                membershipList.suspectNode(target);
+            } else {
+                membershipList.unsuspectNode(target);
+            }
+            buffer.add(ipb);
+        }
+        return buffer.size();
+    }
+
+    //what a full pong carries: suspicions and refutations with rising incarnations
+    private ArrayList<InfoPiggyback> nextMessage() {
+        ArrayList<InfoPiggyback> infoList = new ArrayList<InfoPiggyback>(SwimConfig.DEFAULT_MAX_PIGGYBACK);
+        for (int i = 0; i < SwimConfig.DEFAULT_MAX_PIGGYBACK; i++) {
+            if (++cursor == size) {
+                cursor = 0;
+                incarnation++;
+            }
+            InfoType type = (incarnation & 1) == 0 ? InfoType.SUSPECTEDNODE : InfoType.ALIVENODE;
+            infoList.add(new InfoPiggyback(type, nodes[cursor], incarnation));
+        }
+        return infoList;
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2009 Swedish Institute of Computer Science (SICS) Copyright (C)
+ * 2009 Royal Institute of Technology (KTH)
+ *
+ * GVoD is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package se.kth.swim.benchmark;
+
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import se.kth.swim.MembershipList;
+import se.sics.p2ptoolbox.util.network.NatedAddress;
+
+/**
+ * Probe target selection and id/address lookups of MembershipList.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MembershipListBenchmark {
+
+    @Param({"100", "10000", "100000"})
+    public int size;
+
+    private MembershipList membershipList;
+    private NatedAddress[] nodes;
+    //boxed once here, the id overloads take an Integer
+    private Integer[] ids;
+    private int cursor = 0;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        nodes = Addresses.create(size + 1);
+        membershipList = new MembershipList(new HashSet<NatedAddress>(), nodes[size]);
+        ids = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            membershipList.add(nodes[i]);
+            ids[i] = nodes[i].getId();
+        }
+    }
+
+    @Benchmark
+    public NatedAddress nextToProbe() {
+        return membershipList.nextToProbe();
+    }
+
+    @Benchmark
+    public NatedAddress randomNode() {
+        return membershipList.randomNode();
+    }
+
+    @Benchmark
+    public boolean isSuspectedById() {
+        return membershipList.isSuspected(ids[next()]);
+    }
+
+    @Benchmark
+    public boolean containsByAddress() {
+        return membershipList.contains(nodes[next()]);
+    }
+
+    @Benchmark
+    public int removeAndAdd() {
+        NatedAddress node = nodes[next()];
+        membershipList.remove(node);
+        membershipList.add(node);
+        return membershipList.size();
+    }
+
+    private int next() {
+        if (++cursor == size) {
+            cursor = 0;
+        }
+        return cursor;
+    }
+}
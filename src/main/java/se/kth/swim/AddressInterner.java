@@ -0,0 +1,112 @@
+/*
+* To change this license header, choose License Headers in Project Properties.
+* To change this template file, choose Tools | Templates
+* and open the template in the editor.
+*/
+
+package se.kth.swim;
+
+import java.util.HashSet;
+import java.util.Set;
+import se.sics.p2ptoolbox.util.network.NatedAddress;
+import se.sics.p2ptoolbox.util.network.impl.BasicNatedAddress;
+
+/**
+ * One canonical NatedAddress per node id, so the copies that come with every
+ * message and piggyback collapse to a single instance and comparisons among
+ * canonical addresses are identity checks. The parents of a nated address
+ * are canonical too when they are known.
+ * <p>
+ * intern() only looks the canonical instance up, a node gets one when the
+ * caller calls update() because the membership (or the passive view) took it
+ * in or took a newer address of it, and loses it with remove() when it dies.
+ * So gossip about nodes we never keep, or just removed, leaves no entry. With
+ * a capacity the table starts over when full, a partial view never tells
+ * about every node it forgets.
+ *
+ * @author fabriziodemaria
+ */
+public final class AddressInterner {
+    
+    private final IntHashMap<NatedAddress> canonical = new IntHashMap<NatedAddress>();
+    //0 for no bound
+    private final int capacity;
+    
+    public AddressInterner(int capacity) {
+        this.capacity = capacity;
+    }
+    
+    /**
+     * @return the canonical instance equal to address, the address itself
+     * if there is none
+     */
+    public NatedAddress intern(NatedAddress address) {
+        NatedAddress known = canonical.get(address.getId());
+        if(known != null && (known == address || known.equals(address))){
+            return known;
+        }
+        return address;
+    }
+    
+    /**
+     * Makes address the canonical one for its id, for a node taken in or
+     * that moved to other parents.
+     * @return the new canonical instance
+     */
+    public NatedAddress update(NatedAddress address) {
+        NatedAddress known = canonical.get(address.getId());
+        if(known == address || (known != null && known.equals(address))){
+            return known;
+        }
+        return store(address);
+    }
+    
+    public void remove(int id) {
+        canonical.remove(id);
+    }
+    
+    public int size() {
+        return canonical.size();
+    }
+    
+    /*
+    
+    
+    SUPPORTING CODE
+    
+    
+    */
+    
+    private NatedAddress store(NatedAddress address) {
+        if(capacity > 0 && canonical.size() >= capacity && !canonical.containsKey(address.getId())){
+            canonical.clear();
+        }
+        address = shareParents(address);
+        canonical.put(address.getId(), address);
+        return address;
+    }
+    
+    //a copy with the canonical parents, only if some parent is an equal duplicate
+    private NatedAddress shareParents(NatedAddress address) {
+        if(address.isOpen()){
+            return address;
+        }
+        boolean duplicates = false;
+        for(NatedAddress parent : address.getParents()){
+            NatedAddress known = canonical.get(parent.getId());
+            if(known != null && known != parent && known.equals(parent)){
+                duplicates = true;
+                break;
+            }
+        }
+        if(!duplicates){
+            return address;
+        }
+        Set<NatedAddress> parents = new HashSet<NatedAddress>();
+        for(NatedAddress parent : address.getParents()){
+            NatedAddress known = canonical.get(parent.getId());
+            parents.add(known != null && known.equals(parent) ? known : parent);
+        }
+        return new BasicNatedAddress(address.getBaseAdr(), address.getNatType(), parents);
+    }
+}
@@ -18,9 +18,19 @@
  */
 package se.kth.swim;
 
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.UUID;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import se.kth.swim.AggregatorShardPort.Observation;
+import se.kth.swim.AggregatorShardPort.SampleRequest;
+import se.kth.swim.AggregatorShardPort.ShardSample;
+import se.kth.swim.AggregatorShardPort.Watch;
 import se.kth.swim.msg.net.NetStatus;
+import se.kth.swim.msg.net.NetStatusAck;
+import se.sics.kompics.Component;
 import se.sics.kompics.ComponentDefinition;
 import se.sics.kompics.Handler;
 import se.sics.kompics.Init;
@@ -28,10 +38,16 @@ import se.sics.kompics.Positive;
 import se.sics.kompics.Start;
 import se.sics.kompics.Stop;
 import se.sics.kompics.network.Network;
+import se.sics.kompics.timer.CancelTimeout;
+import se.sics.kompics.timer.SchedulePeriodicTimeout;
+import se.sics.kompics.timer.Timeout;
 import se.sics.kompics.timer.Timer;
 import se.sics.p2ptoolbox.util.network.NatedAddress;
 
 /**
+ * Receives the status reports and spreads them over shards by node id, the
+ * shards answer the nodes and feed the merge stage kept here.
+ *
  * @author Alex Ormenisan <aaor@sics.se>
  */
 public class AggregatorComp extends ComponentDefinition {
@@ -41,14 +57,33 @@ public class AggregatorComp extends ComponentDefinition {
     private Positive<Timer> timer = requires(Timer.class);
 
     private final NatedAddress selfAddress;
+    private final long samplePeriod;
+    private final MetricsCollector metrics;
+    private final Component[] shards;
+    private UUID sampleTimeoutId;
+    //shard samples of the round in progress
+    private ShardSample[] roundSamples;
+    private int roundReplies;
+    private long roundTime = -1;
 
     public AggregatorComp(AggregatorInit init) {
         this.selfAddress = init.selfAddress;
         log.info("{} initiating...", new Object[]{selfAddress.getId()});
+        this.samplePeriod = init.samplePeriod;
+        this.metrics = new MetricsCollector(openCsv(init.metricsPrefix + "-samples.csv"), openCsv(init.metricsPrefix + "-failures.csv"));
 
         subscribe(handleStart, control);
         subscribe(handleStop, control);
         subscribe(handleStatus, network);
+        subscribe(handleSampleTimeout, timer);
+
+        shards = new Component[Math.max(1, init.shards)];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = create(AggregatorShardComp.class, new AggregatorShardComp.AggregatorShardInit(selfAddress, 2 * samplePeriod));
+            subscribe(handleStatusAck, shards[i].getPositive(AggregatorShardPort.class));
+            subscribe(handleObservation, shards[i].getPositive(AggregatorShardPort.class));
+            subscribe(handleShardSample, shards[i].getPositive(AggregatorShardPort.class));
+        }
     }
 
     private Handler<Start> handleStart = new Handler<Start>() {
@@ -56,6 +91,7 @@ public class AggregatorComp extends ComponentDefinition {
         @Override
         public void handle(Start event) {
             log.info("{} starting...", new Object[]{selfAddress});
+            scheduleSample();
         }
 
     };
@@ -64,6 +100,11 @@ public class AggregatorComp extends ComponentDefinition {
         @Override
         public void handle(Stop event) {
             log.info("{} stopping...", new Object[]{selfAddress});
+            if (sampleTimeoutId != null) {
+                trigger(new CancelTimeout(sampleTimeoutId), timer);
+                sampleTimeoutId = null;
+            }
+            metrics.finish();
         }
 
     };
@@ -72,17 +113,117 @@ public class AggregatorComp extends ComponentDefinition {
 
         @Override
         public void handle(NetStatus status) {
-            log.info("{} status from:{} pings:{}", 
-                    new Object[]{selfAddress.getId(), status.getHeader().getSource(), status.getContent().receivedPings});
+            if (log.isDebugEnabled()) {
+                log.debug("{} status from:{} pings:{}",
+                        new Object[]{selfAddress.getId(), status.getHeader().getSource(), status.getContent().receivedPings});
+            }
+            trigger(status, shardOf(status.getHeader().getSource().getId()));
+        }
+    };
+
+    private Handler<NetStatusAck> handleStatusAck = new Handler<NetStatusAck>() {
+
+        @Override
+        public void handle(NetStatusAck ack) {
+            trigger(ack, network);
         }
     };
 
+    private Handler<Observation> handleObservation = new Handler<Observation>() {
+
+        @Override
+        public void handle(Observation event) {
+            if (metrics.observed(event.kind, event.nodeId, event.time)) {
+                trigger(new Watch(event.nodeId), shardOf(event.nodeId));
+            }
+        }
+    };
+
+    private Handler<ShardSample> handleShardSample = new Handler<ShardSample>() {
+
+        @Override
+        public void handle(ShardSample event) {
+            if (event.time != roundTime) {
+                return;
+            }
+            roundSamples[roundReplies++] = event;
+            if (roundReplies == shards.length) {
+                metrics.sample(roundTime, roundSamples);
+                roundTime = -1;
+            }
+        }
+    };
+
+    private Handler<SampleTimeout> handleSampleTimeout = new Handler<SampleTimeout>() {
+
+        @Override
+        public void handle(SampleTimeout event) {
+            if (roundTime >= 0) {
+                log.warn("{} shards did not answer the last sample in time", new Object[]{selfAddress.getId()});
+            }
+            roundTime = System.currentTimeMillis();
+            roundSamples = new ShardSample[shards.length];
+            roundReplies = 0;
+            for (Component shard : shards) {
+                trigger(new SampleRequest(roundTime, metrics.getFullView()), shard.getPositive(AggregatorShardPort.class));
+            }
+            log.info("{} open failures:{}", new Object[]{selfAddress.getId(), metrics.getOpenFailures()});
+        }
+    };
+
+    private Positive<AggregatorShardPort> shardOf(int nodeId) {
+        int index = nodeId % shards.length;
+        return shards[index < 0 ? index + shards.length : index].getPositive(AggregatorShardPort.class);
+    }
+
+    private void scheduleSample() {
+        SchedulePeriodicTimeout spt = new SchedulePeriodicTimeout(samplePeriod, samplePeriod);
+        SampleTimeout sc = new SampleTimeout(spt);
+        spt.setTimeoutEvent(sc);
+        sampleTimeoutId = sc.getTimeoutId();
+        trigger(spt, timer);
+    }
+
+    //metrics are still collected and logged if the file cannot be written
+    private PrintWriter openCsv(String fileName) {
+        try {
+            return new PrintWriter(new FileWriter(fileName));
+        } catch (IOException ex) {
+            log.warn("{} cannot write metrics to {}", new Object[]{selfAddress.getId(), fileName});
+            return null;
+        }
+    }
+
     public static class AggregatorInit extends Init<AggregatorComp> {
 
         public final NatedAddress selfAddress;
+        //also the status period the live window is based on
+        public final long samplePeriod;
+        //the csv files are <metricsPrefix>-samples.csv and <metricsPrefix>-failures.csv
+        public final String metricsPrefix;
+        //status ingestion workers, worth more than one under a threaded scheduler
+        public final int shards;
 
         public AggregatorInit(NatedAddress selfAddress) {
+            this(selfAddress, SwimConfig.DEFAULT_STATUS_PERIOD, System.getProperty("swim.metrics", "swim-metrics"));
+        }
+
+        public AggregatorInit(NatedAddress selfAddress, long samplePeriod, String metricsPrefix) {
+            this(selfAddress, samplePeriod, metricsPrefix, Integer.getInteger("swim.aggregator.shards", 1));
+        }
+
+        public AggregatorInit(NatedAddress selfAddress, long samplePeriod, String metricsPrefix, int shards) {
             this.selfAddress = selfAddress;
+            this.samplePeriod = samplePeriod;
+            this.metricsPrefix = metricsPrefix;
+            this.shards = shards;
+        }
+    }
+
+    private static class SampleTimeout extends Timeout {
+
+        public SampleTimeout(SchedulePeriodicTimeout request) {
+            super(request);
         }
     }
 }
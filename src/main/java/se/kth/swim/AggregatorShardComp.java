@@ -0,0 +1,100 @@
+/*
+* To change this license header, choose License Headers in Project Properties.
+* To change this template file, choose Tools | Templates
+* and open the template in the editor.
+*/
+
+package se.kth.swim;
+
+import se.kth.swim.AggregatorShardPort.Observation;
+import se.kth.swim.AggregatorShardPort.SampleRequest;
+import se.kth.swim.AggregatorShardPort.ShardSample;
+import se.kth.swim.AggregatorShardPort.Watch;
+import se.kth.swim.msg.Status;
+import se.kth.swim.msg.StatusAck;
+import se.kth.swim.msg.net.NetStatus;
+import se.kth.swim.msg.net.NetStatusAck;
+import se.sics.kompics.ComponentDefinition;
+import se.sics.kompics.Handler;
+import se.sics.kompics.Init;
+import se.sics.kompics.Negative;
+import se.sics.p2ptoolbox.util.network.NatedAddress;
+
+/**
+ * Ingests the status reports of the nodes hashed to it. Shards share no
+ * state, under a threaded scheduler they run in parallel.
+ *
+ * @author fabriziodemaria
+ */
+public class AggregatorShardComp extends ComponentDefinition {
+
+    private Negative<AggregatorShardPort> shardPort = provides(AggregatorShardPort.class);
+
+    private final NatedAddress aggregatorAddress;
+    private final StatusAssembler assembler = new StatusAssembler();
+    private final ShardMetrics metrics;
+
+    public AggregatorShardComp(AggregatorShardInit init) {
+        this.aggregatorAddress = init.aggregatorAddress;
+        this.metrics = new ShardMetrics(init.liveWindow);
+
+        subscribe(handleStatus, shardPort);
+        subscribe(handleWatch, shardPort);
+        subscribe(handleSampleRequest, shardPort);
+    }
+
+    private final ShardMetrics.Observer observer = new ShardMetrics.Observer() {
+
+        @Override
+        public void observed(int kind, int nodeId, long time) {
+            trigger(new Observation(kind, nodeId, time), shardPort);
+        }
+    };
+
+    private Handler<NetStatus> handleStatus = new Handler<NetStatus>() {
+
+        @Override
+        public void handle(NetStatus status) {
+            NatedAddress source = status.getHeader().getSource();
+            int seq = status.getContent().seq;
+            //a duplicate gets its ack again, only a report that cannot be applied asks for a full one
+            boolean stale = assembler.isStale(source.getId(), seq);
+            Status report = stale ? null : assembler.apply(source.getId(), status.getContent());
+            trigger(new NetStatusAck(aggregatorAddress, source, new StatusAck(seq, !stale && report == null)), shardPort);
+            if (report != null) {
+                metrics.onStatus(System.currentTimeMillis(), source.getId(), report, observer);
+            }
+        }
+    };
+
+    private Handler<Watch> handleWatch = new Handler<Watch>() {
+
+        @Override
+        public void handle(Watch event) {
+            long lastSeen = metrics.watch(event.nodeId);
+            trigger(new Observation(ShardMetrics.LAST_SEEN, event.nodeId, lastSeen), shardPort);
+        }
+    };
+
+    private Handler<SampleRequest> handleSampleRequest = new Handler<SampleRequest>() {
+
+        @Override
+        public void handle(SampleRequest event) {
+            metrics.expire(event.time);
+            trigger(new ShardSample(event.time, metrics), shardPort);
+            metrics.resetWindow();
+            metrics.setFullView(event.fullView);
+        }
+    };
+
+    public static class AggregatorShardInit extends Init<AggregatorShardComp> {
+
+        public final NatedAddress aggregatorAddress;
+        public final long liveWindow;
+
+        public AggregatorShardInit(NatedAddress aggregatorAddress, long liveWindow) {
+            this.aggregatorAddress = aggregatorAddress;
+            this.liveWindow = liveWindow;
+        }
+    }
+}
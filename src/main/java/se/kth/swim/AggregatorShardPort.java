@@ -0,0 +1,99 @@
+/*
+* To change this license header, choose License Headers in Project Properties.
+* To change this template file, choose Tools | Templates
+* and open the template in the editor.
+*/
+
+package se.kth.swim;
+
+import se.kth.swim.msg.net.NetStatus;
+import se.kth.swim.msg.net.NetStatusAck;
+import se.sics.kompics.KompicsEvent;
+import se.sics.kompics.PortType;
+
+/**
+ * Between the aggregator and its shards. The shards take the status reports
+ * of their nodes and answer with the acks, the failure observations and one
+ * ShardSample per SampleRequest.
+ *
+ * @author fabriziodemaria
+ */
+public class AggregatorShardPort extends PortType {
+
+    {
+        negative(NetStatus.class);
+        negative(Watch.class);
+        negative(SampleRequest.class);
+        positive(NetStatusAck.class);
+        positive(Observation.class);
+        positive(ShardSample.class);
+    }
+
+    public static class Watch implements KompicsEvent {
+
+        public final int nodeId;
+
+        public Watch(int nodeId) {
+            this.nodeId = nodeId;
+        }
+    }
+
+    public static class SampleRequest implements KompicsEvent {
+
+        public final long time;
+        //membership size that counts as a full view from now on
+        public final int fullView;
+
+        public SampleRequest(long time, int fullView) {
+            this.time = time;
+            this.fullView = fullView;
+        }
+    }
+
+    /**
+     * kind is one of the ShardMetrics constants.
+     */
+    public static class Observation implements KompicsEvent {
+
+        public final int kind;
+        public final int nodeId;
+        public final long time;
+
+        public Observation(int kind, int nodeId, long time) {
+            this.kind = kind;
+            this.nodeId = nodeId;
+            this.time = time;
+        }
+    }
+
+    public static class ShardSample implements KompicsEvent {
+
+        public final long time;
+        public final int liveNodes;
+        public final long membershipSum;
+        public final long suspectedSum;
+        public final long bufferSum;
+        public final long incarnationSum;
+        public final long sent;
+        public final long received;
+        public final long maxLoad;
+        public final int joined;
+        public final long joinSum;
+        public final long joinMax;
+
+        public ShardSample(long time, ShardMetrics metrics) {
+            this.time = time;
+            this.liveNodes = metrics.getLiveNodes();
+            this.membershipSum = metrics.getMembershipSum();
+            this.suspectedSum = metrics.getSuspectedSum();
+            this.bufferSum = metrics.getBufferSum();
+            this.incarnationSum = metrics.getIncarnationSum();
+            this.sent = metrics.getWindowSent();
+            this.received = metrics.getWindowReceived();
+            this.maxLoad = metrics.getWindowMaxLoad();
+            this.joined = metrics.getWindowJoined();
+            this.joinSum = metrics.getWindowJoinSum();
+            this.joinMax = metrics.getWindowJoinMax();
+        }
+    }
+}
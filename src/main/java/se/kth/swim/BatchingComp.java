@@ -0,0 +1,193 @@
+/*
+* To change this license header, choose License Headers in Project Properties.
+* To change this template file, choose Tools | Templates
+* and open the template in the editor.
+*/
+
+package se.kth.swim;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import se.kth.swim.msg.net.NetBatch;
+import se.kth.swim.msg.net.NetMsg;
+import se.sics.kompics.ComponentDefinition;
+import se.sics.kompics.Handler;
+import se.sics.kompics.Init;
+import se.sics.kompics.Negative;
+import se.sics.kompics.Positive;
+import se.sics.kompics.Start;
+import se.sics.kompics.Stop;
+import se.sics.kompics.network.Network;
+import se.sics.kompics.timer.ScheduleTimeout;
+import se.sics.kompics.timer.Timeout;
+import se.sics.kompics.timer.Timer;
+import se.sics.p2ptoolbox.util.network.NatedAddress;
+
+/**
+ * Optional stage between the swim component and the nat traversal. Outgoing
+ * messages are held for up to window ms and the ones to the same destination
+ * leave together in a single NetBatch. Incoming batches are unpacked, so the
+ * swim handlers still see one event per message.
+ *
+ * @author fabriziodemaria
+ */
+public class BatchingComp extends ComponentDefinition {
+    
+    //a batch this large leaves without waiting for the window
+    private static final int MAX_BATCH = 16;
+    
+    private static final Logger log = LoggerFactory.getLogger(BatchingComp.class);
+    private Negative<Network> local = provides(Network.class);
+    private Positive<Network> network = requires(Network.class);
+    private Positive<Timer> timer = requires(Timer.class);
+    
+    private final NatedAddress selfAddress;
+    private final long window;
+    
+    //destination id -> messages waiting for the flush
+    private final IntHashMap<ArrayList<NetMsg<?>>> pending = new IntHashMap<ArrayList<NetMsg<?>>>();
+    //destinations in the order of their first pending message
+    private int[] order = new int[16];
+    private int orderSize = 0;
+    private boolean flushScheduled = false;
+    
+    private long messages = 0;
+    private long frames = 0;
+    
+    public BatchingComp(BatchingInit init) {
+        this.selfAddress = init.selfAddress;
+        this.window = init.window;
+        
+        subscribe(handleStart, control);
+        subscribe(handleStop, control);
+        subscribe(handleOutgoingMsg, local);
+        subscribe(handleIncomingMsg, network);
+        subscribe(handleFlush, timer);
+    }
+    
+    private Handler<Start> handleStart = new Handler<Start>() {
+        
+        @Override
+        public void handle(Start event) {
+            log.info("{} batching window {} ms", new Object[]{selfAddress.getId(), window});
+        }
+        
+    };
+    private Handler<Stop> handleStop = new Handler<Stop>() {
+        
+        @Override
+        public void handle(Stop event) {
+            flush();
+            log.info("{} sent {} messages in {} frames", new Object[]{selfAddress.getId(), messages, frames});
+        }
+        
+    };
+    
+    private Handler<NetMsg<Object>> handleOutgoingMsg = new Handler<NetMsg<Object>>() {
+        
+        @Override
+        public void handle(NetMsg<Object> msg) {
+            messages++;
+            int id = msg.getHeader().getDestination().getId();
+            ArrayList<NetMsg<?>> batch = pending.get(id);
+            if(batch == null){
+                batch = new ArrayList<NetMsg<?>>();
+                pending.put(id, batch);
+                if(orderSize == order.length){
+                    order = Arrays.copyOf(order, orderSize * 2);
+                }
+                order[orderSize++] = id;
+            }
+            batch.add(msg);
+            if(batch.size() >= MAX_BATCH){
+                pending.remove(id);
+                send(batch);
+            }
+            if(!flushScheduled){
+                scheduleFlush();
+            }
+        }
+    };
+    
+    private Handler<NetMsg<Object>> handleIncomingMsg = new Handler<NetMsg<Object>>() {
+        
+        @Override
+        public void handle(NetMsg<Object> msg) {
+            NetMsg<?> received = msg;
+            if(received instanceof NetBatch){
+                for(NetMsg<?> inner : ((NetBatch) received).getContent()){
+                    trigger(inner, local);
+                }
+            } else {
+                trigger(msg, local);
+            }
+        }
+    };
+    
+    private Handler<FlushTimeout> handleFlush = new Handler<FlushTimeout>() {
+        
+        @Override
+        public void handle(FlushTimeout event) {
+            flushScheduled = false;
+            flush();
+        }
+    };
+    
+    /*
+    
+    
+    SUPPORTING CODE
+    
+    
+    */
+    
+    private void flush() {
+        for(int i = 0; i < orderSize; i++){
+            //null if it already left full
+            ArrayList<NetMsg<?>> batch = pending.remove(order[i]);
+            if(batch != null){
+                send(batch);
+            }
+        }
+        orderSize = 0;
+    }
+    
+    //a single message goes out as it is, no envelope
+    private void send(ArrayList<NetMsg<?>> batch) {
+        frames++;
+        NetMsg<?> first = batch.get(0);
+        if(batch.size() == 1){
+            trigger(first, network);
+        } else {
+            trigger(new NetBatch(first.getHeader().getSource(), first.getHeader().getDestination(), batch), network);
+        }
+    }
+    
+    private void scheduleFlush() {
+        ScheduleTimeout st = new ScheduleTimeout(window);
+        FlushTimeout ft = new FlushTimeout(st);
+        st.setTimeoutEvent(ft);
+        trigger(st, timer);
+        flushScheduled = true;
+    }
+    
+    public static class BatchingInit extends Init<BatchingComp> {
+        
+        public final NatedAddress selfAddress;
+        public final long window;
+        
+        public BatchingInit(NatedAddress selfAddress, long window) {
+            this.selfAddress = selfAddress;
+            this.window = window;
+        }
+    }
+    
+    private static class FlushTimeout extends Timeout {
+        
+        public FlushTimeout(ScheduleTimeout request) {
+            super(request);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+* To change this license header, choose License Headers in Project Properties.
+* To change this template file, choose Tools | Templates
+* and open the template in the editor.
+*/
+
+package se.kth.swim;
+
+import java.util.ArrayList;
+import se.kth.swim.msg.net.InfoPiggyback;
+import se.kth.swim.msg.net.InfoType;
+import se.sics.p2ptoolbox.util.network.NatedAddress;
+
+/**
+ * Members recently declared dead with the incarnation they died with, so that
+ * late gossip about them (a NEWNODE still in some buffer, a peer lagging
+ * behind) cannot bring them back. A dead node comes back only with a higher
+ * incarnation, after refuting its death.
+ * <p>
+ * The records sit in a ring in the order they were made and go away after
+ * ttl or when the ring is full, the oldest first. A record that is replaced
+ * or removed leaves a hole in the ring that is skipped when it reaches the
+ * head.
+ *
+ * @author fabriziodemaria
+ */
+public final class DeadMembers {
+
+    private final long ttl;
+    //node id -> slot in the ring
+    private final IntIntMap slots = new IntIntMap();
+    private final NatedAddress[] addresses;
+    private final int[] incarnations;
+    //-1 for a hole
+    private final long[] times;
+    private int head = 0;
+    private int count = 0;
+
+    public DeadMembers(int capacity, long ttl) {
+        this.ttl = ttl;
+        this.addresses = new NatedAddress[capacity];
+        this.incarnations = new int[capacity];
+        this.times = new long[capacity];
+    }
+
+    /**
+     * @return true if the record is new or has a higher incarnation than the one kept
+     */
+    public boolean add(NatedAddress address, int incarnation, long now) {
+        int slot = slots.get(address.getId());
+        if(slot >= 0){
+            if(incarnation <= incarnations[slot]){
+                return false;
+            }
+            clear(slot);
+        }
+        if(count == addresses.length){
+            dropOldest();
+        }
+        slot = (head + count) % addresses.length;
+        count++;
+        addresses[slot] = address;
+        incarnations[slot] = incarnation;
+        times[slot] = now;
+        slots.put(address.getId(), slot);
+        return true;
+    }
+
+    /**
+     * For a node that came back with a higher incarnation.
+     */
+    public void remove(int id) {
+        int slot = slots.get(id);
+        if(slot >= 0){
+            clear(slot);
+        }
+    }
+
+    public boolean contains(int id) {
+        return slots.containsKey(id);
+    }
+
+    /**
+     * @return the incarnation the node died with, -1 if there is no record
+     */
+    public int getIncarnation(int id) {
+        int slot = slots.get(id);
+        return slot >= 0 ? incarnations[slot] : -1;
+    }
+
+    /**
+     * @return true if an alive update with this incarnation is older than the death of the node
+     */
+    public boolean buries(int id, int incarnation) {
+        int slot = slots.get(id);
+        return slot >= 0 && incarnation <= incarnations[slot];
+    }
+
+    public void expire(long now) {
+        while(count > 0 && (times[head] < 0 || now - times[head] > ttl)){
+            dropOldest();
+        }
+    }
+
+    public int size() {
+        return slots.size();
+    }
+
+    /**
+     * Adds the hash of every record to its bucket, see SyncDigest.
+     */
+    public void digest(int[] hashes) {
+        for(int i = 0; i < count; i++){
+            int slot = (head + i) % addresses.length;
+            if(times[slot] >= 0){
+                int id = addresses[slot].getId();
+                hashes[SyncDigest.bucket(id, hashes.length)] += SyncDigest.deadHash(id, incarnations[slot]);
+            }
+        }
+    }
+
+    /**
+     * Appends the records of the wanted buckets as DEADNODE gossip.
+     */
+    public void syncEntries(boolean[] wanted, ArrayList<InfoPiggyback> entries) {
+        for(int i = 0; i < count; i++){
+            int slot = (head + i) % addresses.length;
+            if(times[slot] >= 0 && wanted[SyncDigest.bucket(addresses[slot].getId(), wanted.length)]){
+                entries.add(new InfoPiggyback(InfoType.DEADNODE, addresses[slot], incarnations[slot]));
+            }
+        }
+    }
+
+    /*
+
+
+    SUPPORTING CODE
+
+
+    */
+
+    private void clear(int slot) {
+        slots.remove(addresses[slot].getId());
+        addresses[slot] = null;
+        times[slot] = -1;
+    }
+
+    private void dropOldest() {
+        if(times[head] >= 0){
+            clear(head);
+        }
+        head = (head + 1) % addresses.length;
+        count--;
+    }
+}
@@ -0,0 +1,162 @@
+/*
+* To change this license header, choose License Headers in Project Properties.
+* To change this template file, choose Tools | Templates
+* and open the template in the editor.
+*/
+
+package se.kth.swim;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import se.kth.swim.msg.net.InfoPiggyback;
+
+/**
+ * Gossip waiting to be piggybacked, at most one update per node.
+ * Updates are bucketed by how many times they have been sent so the ones
+ * sent the fewest times (and the newest among those) go out first, and an
+ * update is dropped after lambda * log(n) transmissions.
+ *
+ * @author fabriziodemaria
+ */
+public final class DisseminationBuffer {
+
+    private final int lambda;
+    private final int maxPiggyback;
+
+    private final IntHashMap<Entry> entries = new IntHashMap<Entry>();
+    //heads[i] is the list of the updates already sent i times, newest first
+    private Entry[] heads = new Entry[8];
+    //entries picked for the message being built
+    private Entry[] picked;
+
+    public DisseminationBuffer(int lambda, int maxPiggyback) {
+        this.lambda = lambda;
+        this.maxPiggyback = maxPiggyback;
+        this.picked = new Entry[maxPiggyback];
+    }
+
+    /**
+     * Queues an update, replacing whatever was queued about the same node.
+     */
+    public void add(InfoPiggyback ipb) {
+        int id = ipb.getInfoTarget().getId();
+        Entry e = entries.get(id);
+        if (e == null) {
+            e = new Entry(id);
+            entries.put(id, e);
+        } else {
+            unlink(e);
+        }
+        e.info = ipb;
+        e.transmissions = 0;
+        link(e);
+    }
+
+    public void remove(int id) {
+        Entry e = entries.remove(id);
+        if (e != null) {
+            unlink(e);
+        }
+    }
+
+    /**
+     * Picks the updates for the next outgoing message and counts them as
+     * transmitted. The returned list belongs to the message.
+     */
+    public ArrayList<InfoPiggyback> nextPiggyback(int membershipSize) {
+        int limit = retransmitLimit(membershipSize);
+        int count = 0;
+        for (int b = 0; b < heads.length && count < maxPiggyback; b++) {
+            Entry e = heads[b];
+            while (e != null && count < maxPiggyback) {
+                Entry next = e.next;
+                if (b >= limit) {
+                    //the membership shrank since this was queued
+                    entries.remove(e.id);
+                    unlink(e);
+                } else {
+                    picked[count++] = e;
+                }
+                e = next;
+            }
+        }
+
+        ArrayList<InfoPiggyback> piggyback = new ArrayList<InfoPiggyback>(count);
+        for (int i = 0; i < count; i++) {
+            Entry e = picked[i];
+            picked[i] = null;
+            piggyback.add(e.info);
+            unlink(e);
+            e.transmissions++;
+            if (e.transmissions >= limit) {
+                entries.remove(e.id);
+            } else {
+                link(e);
+            }
+        }
+        return piggyback;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    /**
+     * @return lambda * ceil(log2(n + 1)), at least one transmission
+     */
+    public int retransmitLimit(int membershipSize) {
+        int log = 32 - Integer.numberOfLeadingZeros(membershipSize);
+        return lambda * Math.max(1, log);
+    }
+
+    /*
+
+
+    SUPPORTING CODE
+
+
+    */
+
+    private void link(Entry e) {
+        int b = e.transmissions;
+        if (b >= heads.length) {
+            heads = Arrays.copyOf(heads, Math.max(b + 1, heads.length * 2));
+        }
+        e.prev = null;
+        e.next = heads[b];
+        if (heads[b] != null) {
+            heads[b].prev = e;
+        }
+        heads[b] = e;
+    }
+
+    private void unlink(Entry e) {
+        if (e.prev != null) {
+            e.prev.next = e.next;
+        } else {
+            heads[e.transmissions] = e.next;
+        }
+        if (e.next != null) {
+            e.next.prev = e.prev;
+        }
+        e.prev = null;
+        e.next = null;
+    }
+
+    private static class Entry {
+
+        private final int id;
+        private InfoPiggyback info;
+        private int transmissions;
+        private Entry prev;
+        private Entry next;
+
+        public Entry(int id) {
+            this.id = id;
+        }
+    }
+}
@@ -45,6 +45,7 @@ public class HostComp extends ComponentDefinition {
     
     private Component swim;
     private Component nat;
+    private Component batching;
 
     public HostComp(HostInit init) {
         this.selfAddress = init.selfAddress;
@@ -53,11 +54,19 @@ public class HostComp extends ComponentDefinition {
         subscribe(handleStart, control);
         subscribe(handleStop, control);
         
-        nat = create(NatTraversalComp.class, new NatTraversalComp.NatTraversalInit(selfAddress, init.seed));
+        nat = create(NatTraversalComp.class, new NatTraversalComp.NatTraversalInit(selfAddress, init.seed, init.config.relayTimeout));
         connect(nat.getNegative(Network.class), network);
-        swim = create(SwimComp.class, new SwimComp.SwimInit(selfAddress, init.bootstrapNodes, init.aggregatorAddress));
+        swim = create(SwimComp.class, new SwimComp.SwimInit(selfAddress, init.bootstrapNodes, init.aggregatorAddress, init.config));
         connect(swim.getNegative(Timer.class), timer);
-        connect(swim.getNegative(Network.class), nat.getPositive(Network.class));
+        if (init.config.batchWindow > 0) {
+            batching = create(BatchingComp.class, new BatchingComp.BatchingInit(selfAddress, init.config.batchWindow));
+            connect(batching.getNegative(Network.class), nat.getPositive(Network.class));
+            connect(batching.getNegative(Timer.class), timer);
+            connect(swim.getNegative(Network.class), batching.getPositive(Network.class));
+        } else {
+            connect(swim.getNegative(Network.class), nat.getPositive(Network.class));
+        }
+        connect(nat.getNegative(MembershipPort.class), swim.getPositive(MembershipPort.class));
     }
     
     private Handler<Start> handleStart = new Handler<Start>() {
@@ -83,12 +92,18 @@ public class HostComp extends ComponentDefinition {
         public final Set<NatedAddress> bootstrapNodes;
         public final NatedAddress aggregatorAddress;
         public final long seed;
+        public final SwimConfig config;
 
         public HostInit(NatedAddress selfAddress, Set<NatedAddress> bootstrapNodes, NatedAddress aggregatorAddress, long seed) {
+            this(selfAddress, bootstrapNodes, aggregatorAddress, seed, SwimConfig.defaultConfig());
+        }
+
+        public HostInit(NatedAddress selfAddress, Set<NatedAddress> bootstrapNodes, NatedAddress aggregatorAddress, long seed, SwimConfig config) {
             this.selfAddress = selfAddress;
             this.bootstrapNodes = bootstrapNodes;
             this.aggregatorAddress = aggregatorAddress;
             this.seed = seed;
+            this.config = config;
         }
     }
 }
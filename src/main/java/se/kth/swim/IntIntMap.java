@@ -0,0 +1,162 @@
+/*
+* To change this license header, choose License Headers in Project Properties.
+* To change this template file, choose Tools | Templates
+* and open the template in the editor.
+*/
+
+package se.kth.swim;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map from int to non-negative int, the primitive
+ * version of IntHashMap for indexes, so a value costs no object either.
+ *
+ * @author fabriziodemaria
+ */
+public final class IntIntMap {
+
+    private static final float LOAD_FACTOR = 0.5f;
+    //marks a free slot, the values are never negative
+    private static final int FREE = -1;
+
+    private int[] keys;
+    private int[] values;
+    private int size = 0;
+    private int mask;
+    private int resizeAt;
+
+    public IntIntMap() {
+        this(16);
+    }
+
+    public IntIntMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        allocate(capacity);
+    }
+
+    /**
+     * @return the value of the key, -1 if not present
+     */
+    public int get(int key) {
+        int slot = hash(key) & mask;
+        while (values[slot] != FREE) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return FREE;
+    }
+
+    public boolean containsKey(int key) {
+        return get(key) != FREE;
+    }
+
+    /**
+     * @return the previous value, or -1 if there was none
+     */
+    public int put(int key, int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("negative values are not supported");
+        }
+        int slot = hash(key) & mask;
+        while (values[slot] != FREE) {
+            if (keys[slot] == key) {
+                int old = values[slot];
+                values[slot] = value;
+                return old;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size >= resizeAt) {
+            rehash(keys.length << 1);
+        }
+        return FREE;
+    }
+
+    /**
+     * @return the removed value, or -1 if the key was not present
+     */
+    public int remove(int key) {
+        int slot = hash(key) & mask;
+        while (values[slot] != FREE) {
+            if (keys[slot] == key) {
+                int old = values[slot];
+                shiftBack(slot);
+                size--;
+                return old;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return FREE;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(values, FREE);
+        size = 0;
+    }
+
+    /*
+
+
+    SUPPORTING CODE
+
+
+    */
+
+    //backward shift deletion, same as IntHashMap
+    private void shiftBack(int slot) {
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while (values[next] != FREE) {
+            int home = hash(keys[next]) & mask;
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        values[gap] = FREE;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != FREE) {
+                int slot = hash(oldKeys[i]) & mask;
+                while (values[slot] != FREE) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new int[capacity];
+        Arrays.fill(values, FREE);
+        mask = capacity - 1;
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
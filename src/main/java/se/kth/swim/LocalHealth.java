@@ -0,0 +1,48 @@
+/*
+* To change this license header, choose License Headers in Project Properties.
+* To change this template file, choose Tools | Templates
+* and open the template in the editor.
+*/
+
+package se.kth.swim;
+
+/**
+ * Lifeguard local health: a saturating score of how much the node itself is to
+ * blame for missed answers. It goes up on missed nacks, late acks and having to
+ * refute a suspicion, and down on every probe answered in time. A node with a
+ * high score waits longer and probes less, instead of suspecting healthy peers.
+ *
+ * @author fabriziodemaria
+ */
+public final class LocalHealth {
+    
+    private final int max;
+    private int score = 0;
+    
+    public LocalHealth(int max) {
+        this.max = max;
+    }
+    
+    public void failure() {
+        if(score < max){
+            score++;
+        }
+    }
+    
+    public void success() {
+        if(score > 0){
+            score--;
+        }
+    }
+    
+    /**
+     * @return factor for the ack timeout and the probe interval
+     */
+    public int multiplier() {
+        return score + 1;
+    }
+    
+    public int getScore() {
+        return score;
+    }
+}
@@ -6,14 +6,22 @@
 
 package se.kth.swim;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Random;
 import java.util.Set;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import se.kth.swim.msg.net.InfoPiggyback;
+import se.kth.swim.msg.net.InfoType;
 import se.sics.p2ptoolbox.util.network.NatedAddress;
 
 /**
+ * The members as a column table: row i of ids, incarnations, states and
+ * addresses describes one member, rows [0, size) are in use and their order
+ * is also the probe order. With primitive columns and an int to int index a
+ * member costs a few tens of bytes and no objects of its own besides the
+ * address.
  *
  * @author fabriziodemaria
  */
@@ -22,9 +30,21 @@ public final class MembershipList {
     
     private static final Logger log = LoggerFactory.getLogger(MembershipList.class);
     
+    //bits of the state column
+    private static final byte SUSPECTED = 1;
     
     private final NatedAddress selfAddress;
-    private final HashMap<NatedAddress,MemberInfo> neighboursNodes = new HashMap<NatedAddress,MemberInfo>();
+    
+    //keyed by node id, the address of a nated member changes with its parents
+    private final IntIntMap rows = new IntIntMap();
+    private int[] ids = new int[16];
+    private int[] incarnations = new int[16];
+    private byte[] states = new byte[16];
+    private NatedAddress[] addresses = new NatedAddress[16];
+    private int size = 0;
+    //rows [0, probeIndex) were already probed in the current round
+    private int probeIndex = 0;
+    private int suspectedCount = 0;
     
     private Random rand = new Random();
     
@@ -38,102 +58,196 @@ public final class MembershipList {
     
     //default if no info are provided
     public void add(NatedAddress n){
-        neighboursNodes.put(n,new MemberInfo(false,0, n.getId()));
+        add(n, false, 0);
+    }
+    public void add(NatedAddress n, boolean suspected, int incarnationNumber){
+        int row = rows.get(n.getId());
+        if(row >= 0){
+            mark(row, suspected);
+            incarnations[row] = incarnationNumber;
+            updateAddress(n);
+            return;
+        }
+        insertMember(n, incarnationNumber);
+        mark(rows.get(n.getId()), suspected);
     }
-    public void add(NatedAddress n, boolean suspected, Integer incarnationNumber){
-        neighboursNodes.put(n,new MemberInfo(suspected,incarnationNumber, n.getId()));
+    
+    /**
+     * Replaces the stored address of a known member, for nated members that
+     * moved to other parents.
+     */
+    public void updateAddress(NatedAddress n){
+        int row = rows.get(n.getId());
+        //canonical addresses are compared by identity first
+        if(row >= 0 && addresses[row] != n && !addresses[row].equals(n)){
+            addresses[row] = n;
+        }
     }
     
     public void remove(NatedAddress n){
-        if(neighboursNodes.containsKey(n))
-            neighboursNodes.remove(n);
+        remove(n.getId());
     }
     
     public void remove(Integer id){
-        if(lookById(id)!=null){
-            neighboursNodes.remove(lookById(id));
+        int row = rows.get(id);
+        if(row >= 0){
+            mark(row, false);
+            removeMember(row);
         }
         
     }
     
     public boolean contains(NatedAddress na){
-        return neighboursNodes.containsKey(na);
+        return rows.containsKey(na.getId());
     }
     
     public boolean contains(Integer id){
-        return lookById(id)!=null;
+        return rows.containsKey(id);
+    }
+    
+    public NatedAddress getAddress(Integer id){
+        int row = rows.get(id);
+        return row >= 0 ? addresses[row] : null;
     }
     
     
     public boolean isSuspected(NatedAddress n){
-        if(!neighboursNodes.keySet().contains(n)) {
-            return false;
-        }
-        return neighboursNodes.get(n).getSuspected();
+        return isSuspected(n.getId());
     }
     
     public boolean isSuspected(Integer id){
-        if(lookById(id)!=null){
-            return (neighboursNodes.get(lookById(id)).getSuspected());
-        }
-        return false;
+        int row = rows.get(id);
+        return row >= 0 && (states[row] & SUSPECTED) != 0;
     }
     
     public void suspectNode(NatedAddress n){
-        if(neighboursNodes.containsKey(n)){
-            neighboursNodes.get(n).setSuspected(true);
-        } else {
-            //cannot mark
-        }
+        suspectNode(n.getId());
     }
     
     public void suspectNode(Integer id){
-        if(lookById(id)!=null){
-            neighboursNodes.get(lookById(id)).setSuspected(true);
+        int row = rows.get(id);
+        if(row >= 0){
+            mark(row, true);
         }
     }
     
     
     public void unsuspectNode(NatedAddress n){
-        if(neighboursNodes.containsKey(n)){
-            neighboursNodes.get(n).setSuspected(false);
-        } else {
-            //cannot mark
-        }
+        unsuspectNode(n.getId());
     }
     
     public void unsuspectNode(Integer id){
-        if(lookById(id)!=null){
-            neighboursNodes.get(lookById(id)).setSuspected(false);
+        int row = rows.get(id);
+        if(row >= 0){
+            mark(row, false);
+        }
+    }
+    
+    /**
+     * @return the last known incarnation of the node, 0 if unknown
+     */
+    public int getIncarnation(NatedAddress n){
+        int row = rows.get(n.getId());
+        return row >= 0 ? incarnations[row] : 0;
+    }
+    
+    public void setIncarnation(NatedAddress n, int incarnationNumber){
+        int row = rows.get(n.getId());
+        if(row >= 0){
+            incarnations[row] = incarnationNumber;
         }
     }
     
     public boolean isEmpty() {
-        return neighboursNodes.isEmpty();
+        return size == 0;
     }
     
     public int size() {
-        return neighboursNodes.size();
+        return size;
+    }
+    
+    public int suspectedCount() {
+        return suspectedCount;
     }
     
     public NatedAddress randomNode() {
-        int randomNum = rand.nextInt(((size()-1) - 0) + 1) + 0;
-        //TODO improve this
-        return (NatedAddress) neighboursNodes.keySet().toArray()[randomNum];
+        return addresses[rand.nextInt(size)];
     }
     
+    /**
+     * @return up to k distinct random members, never the excluded one
+     */
+    public ArrayList<NatedAddress> randomNodes(int k, NatedAddress exclude) {
+        int available = contains(exclude) ? size - 1 : size;
+        k = Math.min(k, available);
+        ArrayList<NatedAddress> picked = new ArrayList<NatedAddress>(k);
+        while(picked.size() < k){
+            NatedAddress na = randomNode();
+            if(!na.equals(exclude) && !picked.contains(na)){
+                picked.add(na);
+            }
+        }
+        return picked;
+    }
     
-    void printNeighbour() {
-        log.info("NNN " + neighboursNodes.size() );
-        
-        /*
-        System.out.print("" + selfAddress.getId() + " xxxx");
-            
-            for(NatedAddress na : neighboursNodes.keySet()){
-                System.out.print(" - " + na.getId());
+    /**
+     * @return a random open member that is neither suspected nor in exclude, null if there is none
+     */
+    public NatedAddress randomOpenNode(Set<NatedAddress> exclude) {
+        if(size == 0){
+            return null;
+        }
+        //random start and a full sweep, so the search always ends
+        int start = rand.nextInt(size);
+        for(int i = 0; i < size; i++){
+            int row = (start + i) % size;
+            if(addresses[row].isOpen() && (states[row] & SUSPECTED) == 0 && !exclude.contains(addresses[row])){
+                return addresses[row];
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * SWIM round-robin target selection: members are probed in a random order
+     * that is reshuffled at the end of every round, so each member is probed
+     * at least once every size() protocol periods.
+     */
+    public NatedAddress nextToProbe() {
+        if(probeIndex >= size){
+            shuffleMembers();
+            probeIndex = 0;
+        }
+        return addresses[probeIndex++];
+    }
+    
+    
+    /**
+     * Adds the hash of every member to its bucket, see SyncDigest.
+     */
+    public void digest(int[] hashes) {
+        for(int i = 0; i < size; i++){
+            hashes[SyncDigest.bucket(ids[i], hashes.length)] += SyncDigest.hash(ids[i], incarnations[i], (states[i] & SUSPECTED) != 0);
+        }
+    }
+    
+    /**
+     * Appends the members of the wanted buckets as gossip, NEWNODE for the
+     * alive ones so that a receiver that does not know them adds them.
+     */
+    public void syncEntries(boolean[] wanted, ArrayList<InfoPiggyback> entries) {
+        for(int i = 0; i < size; i++){
+            if(wanted[SyncDigest.bucket(ids[i], wanted.length)]){
+                InfoType type = (states[i] & SUSPECTED) != 0 ? InfoType.SUSPECTEDNODE : InfoType.NEWNODE;
+                entries.add(new InfoPiggyback(type, addresses[i], incarnations[i]));
             }
-            System.out.println();
-        */
+        }
+    }
+    
+    void printNeighbour() {
+        if(log.isDebugEnabled()){
+            log.debug("{} has {} neighbours", new Object[]{selfAddress.getId(), size});
+        }
     }
    
     /*
@@ -144,77 +258,69 @@ public final class MembershipList {
     
     */
     
-    private NatedAddress lookById(Integer id){
-        for(NatedAddress na : neighboursNodes.keySet()){
-            if(na.getId()==id){
-                return na;
-            }
+    //every change of the suspected bit goes through here to keep the count
+    private void mark(int row, boolean suspected){
+        boolean was = (states[row] & SUSPECTED) != 0;
+        if(was != suspected){
+            states[row] ^= SUSPECTED;
+            suspectedCount += suspected ? 1 : -1;
         }
-        return null;
     }
-
-    
     
-    private static class MemberInfo {
-        
-        
-        private boolean suspected;
-        private Integer incarnationNumber;
-        private Integer nodeID;
-        
-        public MemberInfo(boolean suspected, Integer incarnationNumber, Integer nodeID) {
-            this.suspected=suspected;
-            this.incarnationNumber=incarnationNumber;
-            this.nodeID = nodeID;
-        }
-        
-        /**
-         * @return the suspected
-         */
-        public boolean isSuspected() {
-            return suspected;
-        }
-        
-        /**
-         * @param suspected the suspected to set
-         */
-        public void setSuspected(boolean suspected) {
-            this.suspected = suspected;
-        }
-        
-        /**
-         * @return the incarnationNumber
-         */
-        public Integer getIncarnationNumber() {
-            return incarnationNumber;
-        }
-        
-        /**
-         * @param incarnationNumber the incarnationNumber to set
-         */
-        public void setIncarnationNumber(Integer incarnationNumber) {
-            this.incarnationNumber = incarnationNumber;
+    //new members go to a random row among the ones not yet probed in this round
+    private void insertMember(NatedAddress n, int incarnation){
+        if(size == ids.length){
+            int capacity = ids.length * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            incarnations = Arrays.copyOf(incarnations, capacity);
+            states = Arrays.copyOf(states, capacity);
+            addresses = Arrays.copyOf(addresses, capacity);
         }
-        
-        /**
-         * @return the nodeID
-         */
-        public Integer getNodeID() {
-            return nodeID;
-        }
-        
-        /**
-         * @param nodeID the nodeID to set
-         */
-        public void setNodeID(Integer nodeID) {
-            this.nodeID = nodeID;
+        int row = size++;
+        ids[row] = n.getId();
+        incarnations[row] = incarnation;
+        states[row] = 0;
+        addresses[row] = n;
+        rows.put(ids[row], row);
+        swapMembers(row, probeIndex + rand.nextInt(row - probeIndex + 1));
+    }
+    
+    private void removeMember(int row){
+        //keep the already probed members in front of probeIndex
+        if(row < probeIndex){
+            probeIndex--;
+            swapMembers(row, probeIndex);
+            row = probeIndex;
         }
-        
-        private boolean getSuspected() {
-            return this.suspected;
+        int last = --size;
+        swapMembers(row, last);
+        rows.remove(ids[last]);
+        addresses[last] = null;
+    }
+    
+    private void shuffleMembers(){
+        for(int i = size - 1; i > 0; i--){
+            swapMembers(i, rand.nextInt(i + 1));
         }
-        
-        
+    }
+    
+    private void swapMembers(int i, int j){
+        if(i == j)
+            return;
+        int id = ids[i];
+        ids[i] = ids[j];
+        ids[j] = id;
+        int incarnation = incarnations[i];
+        incarnations[i] = incarnations[j];
+        incarnations[j] = incarnation;
+        byte state = states[i];
+        states[i] = states[j];
+        states[j] = state;
+        NatedAddress address = addresses[i];
+        addresses[i] = addresses[j];
+        addresses[j] = address;
+        rows.put(ids[i], i);
+        rows.put(ids[j], j);
     }
     
 }
@@ -0,0 +1,40 @@
+/*
+* To change this license header, choose License Headers in Project Properties.
+* To change this template file, choose Tools | Templates
+* and open the template in the editor.
+*/
+
+package se.kth.swim;
+
+import se.kth.swim.msg.net.InfoType;
+import se.sics.kompics.KompicsEvent;
+import se.sics.kompics.PortType;
+import se.sics.p2ptoolbox.util.network.NatedAddress;
+
+/**
+ * Local view changes of the swim component, for the components of the same
+ * host that care about which members are alive (the nat traversal uses them
+ * to stop relaying through failed parents).
+ *
+ * @author fabriziodemaria
+ */
+public class MembershipPort extends PortType {
+
+    {
+        positive(MemberUpdate.class);
+    }
+
+    /**
+     * type is NEWNODE, ALIVENODE, SUSPECTEDNODE or DEADNODE.
+     */
+    public static class MemberUpdate implements KompicsEvent {
+
+        public final NatedAddress address;
+        public final InfoType type;
+
+        public MemberUpdate(NatedAddress address, InfoType type) {
+            this.address = address;
+            this.type = type;
+        }
+    }
+}
@@ -0,0 +1,247 @@
+/*
+* To change this license header, choose License Headers in Project Properties.
+* To change this template file, choose Tools | Templates
+* and open the template in the editor.
+*/
+
+package se.kth.swim;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import se.kth.swim.AggregatorShardPort.ShardSample;
+
+/**
+ * Merge stage of the aggregator metrics, fed with the failure observations
+ * and the periodic samples of the shards.
+ * <p>
+ * A failure record is opened for a node the first time someone reports it as
+ * suspected or dead. It ends as a false positive when the node reports again,
+ * or as disseminated once as many dead reports as live nodes came in. Crash
+ * times are not visible here, latencies are measured from the last report of
+ * the failed node, so they are upper bounds with the resolution of the status
+ * period.
+ * <p>
+ * Time to full view comes from the shards, a node has a full view once it
+ * knows all the other nodes that were live at the previous sample.
+ * <p>
+ * One row of aggregates per sample() goes to the samples writer and one row
+ * per closed failure to the failures writer, both as csv.
+ *
+ * @author fabriziodemaria
+ */
+public final class MetricsCollector {
+    
+    public static final String SAMPLES_HEADER = "time,liveNodes,meanMembership,suspected,meanBufferDepth,incarnations,"
+            + "sent,received,meanLoad,maxLoad,openFailures,suspicions,falseSuspicions,deadDeclared,falseDead,disseminated,falsePositiveRate,"
+            + "joined,meanTimeToFullView,maxTimeToFullView";
+    public static final String FAILURES_HEADER = "node,lastSeen,firstSuspect,firstDead,disseminated,detectionLatency,disseminationLatency,falsePositive";
+    
+    private final PrintWriter samples;
+    private final PrintWriter failureLog;
+    
+    private final IntHashMap<Failure> failures = new IntHashMap<Failure>();
+    private final ArrayList<Failure> openFailures = new ArrayList<Failure>();
+    
+    private int suspicions = 0;
+    private int falseSuspicions = 0;
+    private int deadDeclared = 0;
+    private int falseDead = 0;
+    private int disseminated = 0;
+    private int liveNodes = 0;
+    
+    public MetricsCollector(PrintWriter samples, PrintWriter failureLog) {
+        this.samples = samples;
+        this.failureLog = failureLog;
+        if(samples != null){
+            samples.println(SAMPLES_HEADER);
+        }
+        if(failureLog != null){
+            failureLog.println(FAILURES_HEADER);
+        }
+    }
+    
+    /**
+     * @param kind one of the ShardMetrics kinds
+     * @return true if a failure record was opened, the shard of the node
+     * should watch it from now on
+     */
+    public boolean observed(int kind, int nodeId, long time) {
+        Failure f = failures.get(nodeId);
+        switch(kind){
+            case ShardMetrics.SUSPECT:
+                if(f == null){
+                    f = open(nodeId);
+                }
+                if(f.firstSuspect < 0){
+                    f.firstSuspect = time;
+                    suspicions++;
+                }
+                break;
+            case ShardMetrics.DEAD:
+                if(f == null){
+                    f = open(nodeId);
+                }
+                if(f.firstDead < 0){
+                    f.firstDead = time;
+                    deadDeclared++;
+                }
+                f.deadReports++;
+                f.lastDeadReport = time;
+                break;
+            case ShardMetrics.ALIVE:
+                //whoever still reports is alive
+                if(f != null){
+                    f.falsePositive = true;
+                    if(f.firstDead >= 0){
+                        falseDead++;
+                    } else {
+                        falseSuspicions++;
+                    }
+                    close(f);
+                }
+                return false;
+            case ShardMetrics.LAST_SEEN:
+                if(f != null){
+                    f.lastSeen = time;
+                }
+                return false;
+        }
+        if(!f.watched){
+            f.watched = true;
+            return true;
+        }
+        return false;
+    }
+    
+    /**
+     * Closes the fully disseminated failures and writes one samples row from
+     * the merged shard samples.
+     */
+    public void sample(long now, ShardSample[] parts) {
+        int liveNodes = 0;
+        long membershipSum = 0, suspectedSum = 0, bufferSum = 0, incarnationSum = 0;
+        long sent = 0, received = 0, maxLoad = 0;
+        int joined = 0;
+        long joinSum = 0, joinMax = 0;
+        for(ShardSample part : parts){
+            liveNodes += part.liveNodes;
+            membershipSum += part.membershipSum;
+            suspectedSum += part.suspectedSum;
+            bufferSum += part.bufferSum;
+            incarnationSum += part.incarnationSum;
+            sent += part.sent;
+            received += part.received;
+            maxLoad = Math.max(maxLoad, part.maxLoad);
+            joined += part.joined;
+            joinSum += part.joinSum;
+            joinMax = Math.max(joinMax, part.joinMax);
+        }
+        this.liveNodes = liveNodes;
+        
+        for(int i = openFailures.size() - 1; i >= 0; i--){
+            Failure f = openFailures.get(i);
+            if(f.firstDead >= 0 && liveNodes > 0 && f.deadReports >= liveNodes){
+                f.disseminated = f.lastDeadReport;
+                disseminated++;
+                close(f);
+            }
+        }
+        
+        if(samples != null){
+            samples.println(now + "," + liveNodes + "," + mean(membershipSum, liveNodes) + "," + suspectedSum
+                    + "," + mean(bufferSum, liveNodes) + "," + incarnationSum + "," + sent + "," + received
+                    + "," + mean(sent + received, liveNodes) + "," + maxLoad + "," + openFailures.size() + "," + suspicions
+                    + "," + falseSuspicions + "," + deadDeclared + "," + falseDead + "," + disseminated
+                    + "," + (deadDeclared == 0 ? 0.0 : (double) falseDead / deadDeclared)
+                    + "," + joined + "," + mean(joinSum, joined) + "," + joinMax);
+            samples.flush();
+        }
+        if(failureLog != null){
+            failureLog.flush();
+        }
+    }
+    
+    /**
+     * Writes out the failures still open.
+     */
+    public void finish() {
+        while(!openFailures.isEmpty()){
+            close(openFailures.get(openFailures.size() - 1));
+        }
+        if(samples != null){
+            samples.flush();
+        }
+        if(failureLog != null){
+            failureLog.flush();
+        }
+    }
+    
+    /**
+     * @return the membership size of a full view, all the other nodes live at the last sample
+     */
+    public int getFullView() {
+        return Math.max(0, liveNodes - 1);
+    }
+    
+    public int getOpenFailures() {
+        return openFailures.size();
+    }
+    
+    /*
+    
+    
+    SUPPORTING CODE
+    
+    
+    */
+    
+    private Failure open(int id) {
+        Failure f = new Failure(id);
+        f.index = openFailures.size();
+        openFailures.add(f);
+        failures.put(id, f);
+        return f;
+    }
+    
+    private void close(Failure f) {
+        failures.remove(f.id);
+        Failure last = openFailures.remove(openFailures.size() - 1);
+        if(last != f){
+            openFailures.set(f.index, last);
+            last.index = f.index;
+        }
+        if(failureLog != null){
+            long detected = f.firstSuspect < 0 ? f.firstDead : f.firstDead < 0 ? f.firstSuspect : Math.min(f.firstSuspect, f.firstDead);
+            failureLog.println(f.id + "," + f.lastSeen + "," + f.firstSuspect + "," + f.firstDead + "," + f.disseminated
+                    + "," + latency(f.lastSeen, detected) + "," + latency(f.lastSeen, f.disseminated) + "," + f.falsePositive);
+        }
+    }
+    
+    private static double mean(long sum, int count) {
+        return count == 0 ? 0.0 : (double) sum / count;
+    }
+    
+    private static long latency(long from, long to) {
+        return from < 0 || to < 0 ? -1 : to - from;
+    }
+    
+    private static class Failure {
+        
+        private final int id;
+        private long lastSeen = -1;
+        private long firstSuspect = -1;
+        private long firstDead = -1;
+        private long lastDeadReport = -1;
+        private long disseminated = -1;
+        private int deadReports = 0;
+        private boolean falsePositive = false;
+        //a watch was sent to the shard of the node
+        private boolean watched = false;
+        //position in openFailures
+        private int index;
+        
+        public Failure(int id) {
+            this.id = id;
+        }
+    }
+}
@@ -18,12 +18,16 @@
  */
 package se.kth.swim;
 
-import java.util.Iterator;
 import java.util.Random;
-import java.util.Set;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import se.kth.swim.msg.net.NetBatch;
+import se.kth.swim.msg.net.NetJoin;
 import se.kth.swim.msg.net.NetMsg;
+import se.kth.swim.msg.net.NetPing;
+import se.kth.swim.msg.net.NetPingReq;
+import se.kth.swim.msg.net.NetShuffle;
+import se.kth.swim.trace.EventTrace;
 import se.sics.kompics.ComponentDefinition;
 import se.sics.kompics.Handler;
 import se.sics.kompics.Init;
@@ -44,21 +48,27 @@ import se.sics.p2ptoolbox.util.network.impl.SourceHeader;
 public class NatTraversalComp extends ComponentDefinition {
 
     private static final Logger log = LoggerFactory.getLogger(NatTraversalComp.class);
+    private final EventTrace trace;
     private Negative<Network> local = provides(Network.class);
     private Positive<Network> network = requires(Network.class);
+    private Positive<MembershipPort> membership = requires(MembershipPort.class);
 
     private final NatedAddress selfAddress;
     private final Random rand;
+    private final RelayCache relayCache;
 
     public NatTraversalComp(NatTraversalInit init) {
         this.selfAddress = init.selfAddress;
         log.info("{} {} initiating...", new Object[]{selfAddress.getId(), (selfAddress.isOpen() ? "OPEN" : "NATED")});
 
         this.rand = new Random(init.seed);
+        this.relayCache = new RelayCache(init.relayTimeout, rand);
+        this.trace = new EventTrace(log, selfAddress.getId());
         subscribe(handleStart, control);
         subscribe(handleStop, control);
         subscribe(handleIncomingMsg, network);
         subscribe(handleOutgoingMsg, local);
+        subscribe(handleMemberUpdate, membership);
     }
 
     private Handler<Start> handleStart = new Handler<Start>() {
@@ -82,15 +92,15 @@ public class NatTraversalComp extends ComponentDefinition {
 
         @Override
         public void handle(NetMsg<Object> msg) {
-            log.trace("{} received msg:{}", new Object[]{selfAddress.getId(), msg});
             Header<NatedAddress> header = msg.getHeader();
+            trace.event(EventTrace.NAT_RECEIVED, header.getSource().getId());
             if (header instanceof SourceHeader) {
                 if (!selfAddress.isOpen()) {
                     throw new RuntimeException("source header msg received on nated node - nat traversal logic error");
                 }
                 SourceHeader<NatedAddress> sourceHeader = (SourceHeader<NatedAddress>) header;
                 if (sourceHeader.getActualDestination().getParents().contains(selfAddress)) {
-                   // log.info("{} relaying message for:{}", new Object[]{selfAddress.getId(), sourceHeader.getSource()});
+                    trace.event(EventTrace.NAT_RELAYED, sourceHeader.getSource().getId(), sourceHeader.getActualDestination().getId());
                     RelayHeader<NatedAddress> relayHeader = sourceHeader.getRelayHeader();
                     trigger(msg.copyMessage(relayHeader), network);
                     return;
@@ -103,12 +113,14 @@ public class NatTraversalComp extends ComponentDefinition {
                     throw new RuntimeException("relay header msg received on open node - nat traversal logic error");
                 }
                 RelayHeader<NatedAddress> relayHeader = (RelayHeader<NatedAddress>) header;
-                //log.info("{} delivering relayed message:{} from:{}", new Object[]{selfAddress.getId(), msg, relayHeader.getActualSource()});
+                trace.event(EventTrace.NAT_DELIVERED, relayHeader.getActualSource().getId());
                 Header<NatedAddress> originalHeader = relayHeader.getActualHeader();
+                relayCache.delivered(originalHeader.getSource().getId(), System.currentTimeMillis());
                 trigger(msg.copyMessage(originalHeader), local);
                 return;
             } else {
                 //log.info("{} delivering direct message:{} from:{}", new Object[]{selfAddress.getId(), msg, header.getSource()});
+                relayCache.delivered(header.getSource().getId(), System.currentTimeMillis());
                 trigger(msg, local);
                 return;
             }
@@ -120,19 +132,18 @@ public class NatTraversalComp extends ComponentDefinition {
 
         @Override
         public void handle(NetMsg<Object> msg) {
-            log.trace("{} sending msg:{}", new Object[]{selfAddress.getId(), msg});
             Header<NatedAddress> header = msg.getHeader();
             if(header.getDestination().isOpen()) {
-                log.info("{} sending direct message:{} to:{}", new Object[]{selfAddress.getId(), msg, header.getDestination()});
+                trace.event(EventTrace.NAT_DIRECT, header.getDestination().getId());
                 trigger(msg, network);
                 return;
             } else {
                 if(header.getDestination().getParents().isEmpty()) {
                     throw new RuntimeException("nated node with no parents");
                 }
-                NatedAddress parent = randomNode(header.getDestination().getParents());
+                NatedAddress parent = relayCache.select(header.getDestination(), expectsReply(msg), System.currentTimeMillis());
                 SourceHeader<NatedAddress> sourceHeader = new SourceHeader(header, parent);
-                log.info("{} sending message:{} to relay:{}", new Object[]{selfAddress.getId(), msg, parent});
+                trace.event(EventTrace.NAT_TO_RELAY, parent.getId(), header.getDestination().getId());
                 trigger(msg.copyMessage(sourceHeader), network);
                 return;
             }
@@ -140,24 +151,40 @@ public class NatTraversalComp extends ComponentDefinition {
 
     };
     
-    private NatedAddress randomNode(Set<NatedAddress> nodes) {
-        int index = rand.nextInt(nodes.size());
-        Iterator<NatedAddress> it = nodes.iterator();
-        while(index > 0) {
-            it.next();
-            index--;
+    //only these are sure to get an answer from a live destination, the others
+    //(pongs, acks, join chunks...) say nothing about the parent when unanswered
+    private static boolean expectsReply(NetMsg<?> msg) {
+        if (msg instanceof NetBatch) {
+            for (NetMsg<?> inner : ((NetBatch) msg).getContent()) {
+                if (expectsReply(inner)) {
+                    return true;
+                }
+            }
+            return false;
         }
-        return it.next();
+        return msg instanceof NetPing || msg instanceof NetPingReq || msg instanceof NetJoin
+                || (msg instanceof NetShuffle && !((NetShuffle) msg).getContent().reply);
     }
+    
+    private Handler<MembershipPort.MemberUpdate> handleMemberUpdate = new Handler<MembershipPort.MemberUpdate>() {
+
+        @Override
+        public void handle(MembershipPort.MemberUpdate event) {
+            relayCache.update(event.address, event.type);
+        }
+
+    };
 
     public static class NatTraversalInit extends Init<NatTraversalComp> {
 
         public final NatedAddress selfAddress;
         public final long seed;
+        public final long relayTimeout;
 
-        public NatTraversalInit(NatedAddress selfAddress, long seed) {
+        public NatTraversalInit(NatedAddress selfAddress, long seed, long relayTimeout) {
             this.selfAddress = selfAddress;
             this.seed = seed;
+            this.relayTimeout = relayTimeout;
         }
     }
 }
@@ -0,0 +1,139 @@
+/*
+* To change this license header, choose License Headers in Project Properties.
+* To change this template file, choose Tools | Templates
+* and open the template in the editor.
+*/
+
+package se.kth.swim;
+
+import java.util.ArrayList;
+import java.util.Random;
+import se.kth.swim.msg.net.InfoPiggyback;
+import se.kth.swim.msg.net.InfoType;
+import se.sics.p2ptoolbox.util.network.NatedAddress;
+
+/**
+ * HyParView passive view: a bounded set of known but not monitored nodes,
+ * refreshed by shuffles and used to refill the active view (the membership
+ * list) when an active member fails or disconnects. When full, a new node
+ * replaces a random one.
+ *
+ * @author fabriziodemaria
+ */
+public final class PassiveView {
+    
+    private final NatedAddress[] members;
+    private final int[] incarnations;
+    private int size = 0;
+    //node id -> position in members
+    private final IntIntMap index = new IntIntMap();
+    private final Random rand;
+    
+    public PassiveView(int capacity, Random rand) {
+        this.members = new NatedAddress[capacity];
+        this.incarnations = new int[capacity];
+        this.rand = rand;
+    }
+    
+    /**
+     * Adds the node or refreshes its address and incarnation if newer.
+     */
+    public void add(NatedAddress address, int incarnation) {
+        if(members.length == 0){
+            return;
+        }
+        int i = index.get(address.getId());
+        if(i >= 0){
+            if(incarnation > incarnations[i]){
+                members[i] = address;
+                incarnations[i] = incarnation;
+            }
+            return;
+        }
+        int slot = size;
+        if(size == members.length){
+            slot = rand.nextInt(size);
+            index.remove(members[slot].getId());
+        } else {
+            size++;
+        }
+        members[slot] = address;
+        incarnations[slot] = incarnation;
+        index.put(address.getId(), slot);
+    }
+    
+    public void remove(int id) {
+        int i = index.remove(id);
+        if(i < 0){
+            return;
+        }
+        int last = --size;
+        if(i != last){
+            members[i] = members[last];
+            incarnations[i] = incarnations[last];
+            index.put(members[i].getId(), i);
+        }
+        members[last] = null;
+    }
+    
+    public boolean contains(int id) {
+        return index.containsKey(id);
+    }
+    
+    public int getIncarnation(int id) {
+        int i = index.get(id);
+        return i >= 0 ? incarnations[i] : 0;
+    }
+    
+    /**
+     * @return a random node, null if empty
+     */
+    public NatedAddress randomNode() {
+        return size == 0 ? null : members[rand.nextInt(size)];
+    }
+    
+    /**
+     * Appends up to k distinct random nodes as NEWNODE gossip.
+     */
+    public void sample(int k, ArrayList<InfoPiggyback> out) {
+        k = Math.min(k, size);
+        //partial Fisher-Yates over the first k slots, the order does not matter here
+        for(int j = 0; j < k; j++){
+            int r = j + rand.nextInt(size - j);
+            swap(j, r);
+            out.add(new InfoPiggyback(InfoType.NEWNODE, members[j], incarnations[j]));
+        }
+    }
+    
+    public void entries(ArrayList<InfoPiggyback> out) {
+        for(int i = 0; i < size; i++){
+            out.add(new InfoPiggyback(InfoType.NEWNODE, members[i], incarnations[i]));
+        }
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    /*
+    
+    
+    SUPPORTING CODE
+    
+    
+    */
+    
+    private void swap(int i, int j) {
+        if(i == j){
+            return;
+        }
+        NatedAddress a = members[i];
+        members[i] = members[j];
+        members[j] = a;
+        int inc = incarnations[i];
+        incarnations[i] = incarnations[j];
+        incarnations[j] = inc;
+        index.put(members[i].getId(), i);
+        index.put(members[j].getId(), j);
+    }
+}
@@ -0,0 +1,261 @@
+/*
+* To change this license header, choose License Headers in Project Properties.
+* To change this template file, choose Tools | Templates
+* and open the template in the editor.
+*/
+
+package se.kth.swim;
+
+import java.util.Random;
+import java.util.Set;
+import se.kth.swim.msg.net.InfoType;
+import se.sics.p2ptoolbox.util.network.NatedAddress;
+
+/**
+ * Relay parent choice for messages to nated nodes. For every destination it
+ * keeps the parents in an array with their smoothed round trip time and the
+ * number of sends in a row that got no answer, and remembers the best usable
+ * one, so picking a parent is O(1).
+ * <p>
+ * A request through a parent (a send the destination always answers, as a
+ * ping) is answered by the next message the destination sends us, whatever
+ * its type. Other sends are routed the same way but never measured. A
+ * parent is unusable after MAX_MISSES unanswered sends or while the
+ * membership says it is suspected or dead, until it is alive again.
+ * One send in EXPLORE goes to a random parent so the others keep fresh stats
+ * and can come back.
+ *
+ * @author fabriziodemaria
+ */
+public final class RelayCache {
+
+    private static final int MAX_MISSES = 2;
+    //power of two
+    private static final int EXPLORE = 16;
+    //routes and down entries kept at most, past that the least recently used
+    //route and the oldest down entry go, so the memory stays bounded with a
+    //partial view and a large group
+    static final int MAX_ROUTES = 4096;
+
+    private final long timeout;
+    private final Random rand;
+    //destination id -> route
+    private final IntHashMap<Route> routes = new IntHashMap<Route>();
+    //most and least recently used route
+    private Route newest;
+    private Route oldest;
+    //parents the membership reports as suspected or dead -> their slot in downOrder
+    private final IntIntMap down = new IntIntMap();
+    //ids in the order they went down, -1 for the slots of those that came back since
+    private final int[] downOrder = new int[MAX_ROUTES];
+    private int downHead = 0;
+    private int downCount = 0;
+    //bumped on every change of down, routes compare it to know they are stale
+    private int version = 0;
+
+    /**
+     * @param timeout how long a request may wait for an answer before it counts as a miss
+     */
+    public RelayCache(long timeout, Random rand) {
+        this.timeout = timeout;
+        this.rand = rand;
+    }
+
+    /**
+     * @param request true if the destination answers this send, only those are measured
+     */
+    public NatedAddress select(NatedAddress destination, boolean request, long now) {
+        Set<NatedAddress> parents = destination.getParents();
+        Route route = routes.get(destination.getId());
+        //a new address object may come with new parents, most of the time it is an equal copy
+        if(route == null || (route.parentSet != parents && !route.parentSet.equals(parents))){
+            if(route != null){
+                unlink(route);
+            } else if(routes.size() >= MAX_ROUTES){
+                routes.remove(oldest.id);
+                unlink(oldest);
+            }
+            route = new Route(destination.getId(), parents);
+            routes.put(route.id, route);
+        } else {
+            route.parentSet = parents;
+            unlink(route);
+        }
+        link(route);
+        if(route.pending >= 0 && now - route.pendingSince > timeout){
+            route.misses[route.pending]++;
+            route.pending = -1;
+            route.version = -1;
+        }
+        if(route.version != version){
+            choose(route);
+        }
+        int picked = route.best;
+        if((++route.sent & (EXPLORE - 1)) == 0){
+            picked = rand.nextInt(route.parents.length);
+        }
+        if(request && route.pending < 0){
+            route.pending = picked;
+            route.pendingSince = now;
+        }
+        return route.parents[picked];
+    }
+
+    /**
+     * Anything received from the node answers the pending send to it.
+     */
+    public void delivered(int sourceId, long now) {
+        Route route = routes.get(sourceId);
+        if(route == null || route.pending < 0){
+            return;
+        }
+        int i = route.pending;
+        long rtt = now - route.pendingSince;
+        route.srtt[i] = route.srtt[i] < 0 ? rtt : (7 * route.srtt[i] + rtt) / 8;
+        route.misses[i] = 0;
+        route.pending = -1;
+        choose(route);
+    }
+
+    public void update(NatedAddress address, InfoType type) {
+        int id = address.getId();
+        switch(type){
+            case SUSPECTEDNODE:
+                markDown(id);
+                break;
+            case DEADNODE:
+                //no more sends to it, but it stays down for the routes that still list it as a parent
+                Route route = routes.remove(id);
+                if(route != null){
+                    unlink(route);
+                }
+                markDown(id);
+                break;
+            case NEWNODE:
+            case ALIVENODE:
+                int slot = down.remove(id);
+                if(slot >= 0){
+                    downOrder[slot] = -1;
+                    version++;
+                }
+                break;
+        }
+    }
+
+    public int size() {
+        return routes.size();
+    }
+
+    boolean hasRoute(int id) {
+        return routes.containsKey(id);
+    }
+
+    int downSize() {
+        return down.size();
+    }
+
+    boolean isDown(int id) {
+        return down.containsKey(id);
+    }
+
+    /*
+
+
+    SUPPORTING CODE
+
+
+    */
+
+    //untried parents first, then the lowest srtt, if none is usable the one with fewest misses
+    private void choose(Route route) {
+        int best = -1;
+        int fallback = 0;
+        for(int i = 0; i < route.parents.length; i++){
+            if(route.misses[i] < route.misses[fallback]){
+                fallback = i;
+            }
+            if(route.misses[i] >= MAX_MISSES || down.containsKey(route.parents[i].getId())){
+                continue;
+            }
+            if(best < 0 || route.srtt[i] < route.srtt[best]){
+                best = i;
+            }
+        }
+        route.best = best >= 0 ? best : fallback;
+        route.version = version;
+    }
+
+    private void markDown(int id) {
+        if(down.containsKey(id)){
+            return;
+        }
+        if(downCount == downOrder.length){
+            //the oldest slot goes, it is either the oldest down entry or a free one
+            int oldestId = downOrder[downHead];
+            downHead = (downHead + 1) % downOrder.length;
+            downCount--;
+            if(oldestId >= 0){
+                down.remove(oldestId);
+            }
+        }
+        int slot = (downHead + downCount++) % downOrder.length;
+        downOrder[slot] = id;
+        down.put(id, slot);
+        version++;
+    }
+
+    private void link(Route route) {
+        route.older = newest;
+        route.newer = null;
+        if(newest != null){
+            newest.newer = route;
+        } else {
+            oldest = route;
+        }
+        newest = route;
+    }
+
+    private void unlink(Route route) {
+        if(route.newer != null){
+            route.newer.older = route.older;
+        } else {
+            newest = route.older;
+        }
+        if(route.older != null){
+            route.older.newer = route.newer;
+        } else {
+            oldest = route.newer;
+        }
+        route.newer = null;
+        route.older = null;
+    }
+
+    private static class Route {
+
+        private final int id;
+        private Set<NatedAddress> parentSet;
+        private final NatedAddress[] parents;
+        //-1 until the first answer, so untried parents sort first
+        private final long[] srtt;
+        private final int[] misses;
+        private int best = 0;
+        private int version = -1;
+        private int sent = 0;
+        //parent index of the send still waiting for an answer, -1 if none
+        private int pending = -1;
+        private long pendingSince;
+        private Route newer;
+        private Route older;
+
+        private Route(int id, Set<NatedAddress> parentSet) {
+            this.id = id;
+            this.parentSet = parentSet;
+            this.parents = parentSet.toArray(new NatedAddress[parentSet.size()]);
+            this.srtt = new long[parents.length];
+            this.misses = new int[parents.length];
+            for(int i = 0; i < parents.length; i++){
+                srtt[i] = -1;
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/*
+* To change this license header, choose License Headers in Project Properties.
+* To change this template file, choose Tools | Templates
+* and open the template in the editor.
+*/
+
+package se.kth.swim;
+
+import se.kth.swim.msg.net.InfoPiggyback;
+import se.kth.swim.msg.net.InfoType;
+
+/**
+ * Last update seen about nodes that are not members, for the partial view
+ * mode where a node relays gossip about nodes it does not monitor. Without it
+ * an update about such a node would be queued again every time it comes back,
+ * and never die out. Holds at most capacity nodes, the oldest one goes first.
+ *
+ * @author fabriziodemaria
+ */
+public final class RumorCache {
+    
+    private final IntHashMap<InfoPiggyback> latest = new IntHashMap<InfoPiggyback>();
+    //ids in insertion order, a ring
+    private final int[] order;
+    private int next = 0;
+    
+    public RumorCache(int capacity) {
+        this.order = new int[capacity];
+    }
+    
+    /**
+     * @return true if the update is newer than what was seen about the node,
+     * it is remembered in that case
+     */
+    public boolean isNew(InfoPiggyback ipb) {
+        int id = ipb.getInfoTarget().getId();
+        InfoPiggyback old = latest.get(id);
+        if(old != null){
+            //a dead member is final, but a node that is not one may have
+            //rejoined since, a higher incarnation means it is back
+            boolean newer = old.getInfoType() == InfoType.DEADNODE
+                    ? ipb.getIncarnationValue() > old.getIncarnationValue()
+                    : InfoPiggyback.overrides(ipb.getInfoType(), ipb.getIncarnationValue(), old.getInfoType(), old.getIncarnationValue());
+            if(!newer){
+                return false;
+            }
+            latest.put(id, ipb);
+            return true;
+        }
+        if(latest.size() == order.length){
+            latest.remove(order[next]);
+        }
+        order[next] = id;
+        next = (next + 1) % order.length;
+        latest.put(id, ipb);
+        return true;
+    }
+}
@@ -0,0 +1,223 @@
+/*
+* To change this license header, choose License Headers in Project Properties.
+* To change this template file, choose Tools | Templates
+* and open the template in the editor.
+*/
+
+package se.kth.swim;
+
+import java.util.ArrayList;
+import se.kth.swim.msg.Status;
+
+/**
+ * Per node part of the aggregator metrics for the nodes of one shard: last
+ * report, liveness and message load, kept as running sums over the live nodes.
+ * What concerns failures is handed to an Observer for the merge stage, a
+ * watched node reports ALIVE once the next time it is heard from.
+ * <p>
+ * Time to full view is counted from the first report of a node to its first
+ * report with a membership of at least the full view size set by the merge
+ * stage, both with the resolution of the status period.
+ *
+ * @author fabriziodemaria
+ */
+public final class ShardMetrics {
+    
+    public static final int SUSPECT = 0;
+    public static final int DEAD = 1;
+    public static final int ALIVE = 2;
+    //answer of the shard to a watch
+    public static final int LAST_SEEN = 3;
+    
+    public interface Observer {
+        void observed(int kind, int nodeId, long time);
+    }
+    
+    //a node counts as live while its last report is younger than this
+    private final long liveWindow;
+    private final ArrayList<NodeState> nodes = new ArrayList<NodeState>();
+    private final IntHashMap<NodeState> nodesById = new IntHashMap<NodeState>();
+    
+    private int liveNodes = 0;
+    private long membershipSum = 0;
+    private long suspectedSum = 0;
+    private long bufferSum = 0;
+    private long incarnationSum = 0;
+    
+    //since the last resetWindow()
+    private long windowSent = 0;
+    private long windowReceived = 0;
+    private long windowMaxLoad = 0;
+    private int windowJoined = 0;
+    private long windowJoinSum = 0;
+    private long windowJoinMax = 0;
+    
+    //membership size that counts as a full view, 0 until known
+    private int fullView = 0;
+    
+    public ShardMetrics(long liveWindow) {
+        this.liveWindow = liveWindow;
+    }
+    
+    public void onStatus(long now, int nodeId, Status status, Observer observer) {
+        NodeState node = node(nodeId);
+        if(node.watched){
+            node.watched = false;
+            observer.observed(ALIVE, nodeId, now);
+        }
+        
+        if(node.live){
+            addSums(node, -1);
+        } else {
+            node.live = true;
+            liveNodes++;
+        }
+        //counters restart from zero if the id came back as a new node
+        long sent = status.sentMessages >= node.sent ? status.sentMessages - node.sent : status.sentMessages;
+        long received = status.receivedMessages >= node.received ? status.receivedMessages - node.received : status.receivedMessages;
+        windowSent += sent;
+        windowReceived += received;
+        windowMaxLoad = Math.max(windowMaxLoad, sent + received);
+        node.sent = status.sentMessages;
+        node.received = status.receivedMessages;
+        node.membershipSize = status.membershipSize;
+        node.suspected = status.suspectedCount;
+        node.bufferDepth = status.bufferDepth;
+        node.incarnation = status.incarnation;
+        node.lastSeen = now;
+        if(node.firstSeen < 0){
+            node.firstSeen = now;
+        }
+        if(node.fullViewAt < 0 && fullView > 0 && status.membershipSize >= fullView){
+            node.fullViewAt = now;
+            long joinTime = now - node.firstSeen;
+            windowJoined++;
+            windowJoinSum += joinTime;
+            windowJoinMax = Math.max(windowJoinMax, joinTime);
+        }
+        addSums(node, 1);
+        
+        for(int id : status.newSuspects){
+            observer.observed(SUSPECT, id, now);
+        }
+        for(int id : status.newDead){
+            observer.observed(DEAD, id, now);
+        }
+    }
+    
+    /**
+     * @return time of the last report of the node, -1 if never heard of
+     */
+    public long watch(int nodeId) {
+        NodeState node = node(nodeId);
+        node.watched = true;
+        return node.lastSeen;
+    }
+    
+    public void expire(long now) {
+        for(NodeState node : nodes){
+            if(node.live && now - node.lastSeen > liveWindow){
+                node.live = false;
+                liveNodes--;
+                addSums(node, -1);
+            }
+        }
+    }
+    
+    public void resetWindow() {
+        windowSent = 0;
+        windowReceived = 0;
+        windowMaxLoad = 0;
+        windowJoined = 0;
+        windowJoinSum = 0;
+        windowJoinMax = 0;
+    }
+    
+    public void setFullView(int fullView) {
+        this.fullView = fullView;
+    }
+    
+    public int getLiveNodes() {
+        return liveNodes;
+    }
+    
+    public long getMembershipSum() {
+        return membershipSum;
+    }
+    
+    public long getSuspectedSum() {
+        return suspectedSum;
+    }
+    
+    public long getBufferSum() {
+        return bufferSum;
+    }
+    
+    public long getIncarnationSum() {
+        return incarnationSum;
+    }
+    
+    public long getWindowSent() {
+        return windowSent;
+    }
+    
+    public long getWindowReceived() {
+        return windowReceived;
+    }
+    
+    public long getWindowMaxLoad() {
+        return windowMaxLoad;
+    }
+    
+    public int getWindowJoined() {
+        return windowJoined;
+    }
+    
+    public long getWindowJoinSum() {
+        return windowJoinSum;
+    }
+    
+    public long getWindowJoinMax() {
+        return windowJoinMax;
+    }
+    
+    /*
+    
+    
+    SUPPORTING CODE
+    
+    
+    */
+    
+    private NodeState node(int nodeId) {
+        NodeState node = nodesById.get(nodeId);
+        if(node == null){
+            node = new NodeState();
+            nodes.add(node);
+            nodesById.put(nodeId, node);
+        }
+        return node;
+    }
+    
+    private void addSums(NodeState node, int sign) {
+        membershipSum += sign * node.membershipSize;
+        suspectedSum += sign * node.suspected;
+        bufferSum += sign * node.bufferDepth;
+        incarnationSum += sign * node.incarnation;
+    }
+    
+    private static class NodeState {
+        
+        private boolean live;
+        private boolean watched;
+        private long lastSeen = -1;
+        private long firstSeen = -1;
+        private long fullViewAt = -1;
+        private int sent;
+        private int received;
+        private int membershipSize;
+        private int suspected;
+        private int bufferDepth;
+        private int incarnation;
+    }
+}
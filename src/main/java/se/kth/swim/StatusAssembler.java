@@ -0,0 +1,88 @@
+/*
+* To change this license header, choose License Headers in Project Properties.
+* To change this template file, choose Tools | Templates
+* and open the template in the editor.
+*/
+
+package se.kth.swim;
+
+import java.util.Arrays;
+import se.kth.swim.msg.Status;
+
+/**
+ * Aggregator side of the status reports, rebuilds absolute reports from the
+ * deltas. For each node it keeps the last applied report and the base the
+ * node is known to use, a node moves its base as soon as it sees the ack of
+ * the applied one.
+ *
+ * @author fabriziodemaria
+ */
+public final class StatusAssembler {
+    
+    private final IntHashMap<NodeReports> nodes = new IntHashMap<NodeReports>();
+    
+    /**
+     * @return true if a report with this seq or a later one was applied
+     * already, a duplicate or reordered copy that only needs its ack again
+     */
+    public boolean isStale(int nodeId, int seq) {
+        NodeReports node = nodes.get(nodeId);
+        return node != null && node.applied != null && seq <= node.appliedSeq;
+    }
+    
+    /**
+     * @return the absolute report with only the events not seen before, null
+     * if the report is stale or its base is unknown, a gap that needs a full
+     * report
+     */
+    public Status apply(int nodeId, Status report) {
+        if(isStale(nodeId, report.seq)){
+            return null;
+        }
+        NodeReports node = nodes.get(nodeId);
+        if(node == null){
+            node = new NodeReports();
+            nodes.put(nodeId, node);
+        }
+        
+        int[] values = report.values();
+        if(report.baseSeq != Status.FULL){
+            if(node.applied != null && report.baseSeq == node.appliedSeq){
+                node.base = node.applied;
+                node.baseSeq = node.appliedSeq;
+            }
+            if(node.base == null || report.baseSeq != node.baseSeq){
+                return null;
+            }
+            for(int i = 0; i < values.length; i++){
+                values[i] += node.base[i];
+            }
+        }
+        node.applied = values;
+        node.appliedSeq = report.seq;
+        
+        Status status = Status.fromValues(values);
+        status.seq = report.seq;
+        status.newSuspects = unseen(report.newSuspects, report.suspectsFrom, node.suspectsSeen);
+        node.suspectsSeen = Math.max(node.suspectsSeen, report.suspectsFrom + report.newSuspects.length);
+        status.newDead = unseen(report.newDead, report.deadFrom, node.deadSeen);
+        node.deadSeen = Math.max(node.deadSeen, report.deadFrom + report.newDead.length);
+        return status;
+    }
+    
+    private static int[] unseen(int[] ids, int from, int seen) {
+        int skip = Math.min(ids.length, Math.max(0, seen - from));
+        return skip == 0 ? ids : Arrays.copyOfRange(ids, skip, ids.length);
+    }
+    
+    private static class NodeReports {
+        
+        private int[] base;
+        private int baseSeq;
+        private int[] applied;
+        private int appliedSeq;
+        //event log positions already handed out
+        private int suspectsSeen = 0;
+        private int deadSeen = 0;
+    }
+}
@@ -0,0 +1,160 @@
+/*
+* To change this license header, choose License Headers in Project Properties.
+* To change this template file, choose Tools | Templates
+* and open the template in the editor.
+*/
+
+package se.kth.swim;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import se.kth.swim.msg.Status;
+
+/**
+ * Node side of the status reports. A report holds the difference to the last
+ * acked report plus the events not acked yet, every fullEvery reports, and
+ * whenever the aggregator asks for it, the values are sent absolute instead.
+ * A stable node sends a handful of zero fields.
+ *
+ * @author fabriziodemaria
+ */
+public final class StatusReporter {
+    
+    //reports kept while waiting for their ack
+    private static final int MAX_UNACKED = 8;
+    //events kept for an aggregator that stopped acking, older ones are lost
+    private static final int MAX_EVENTS = 4096;
+    
+    private final int fullEvery;
+    private final EventLog suspects = new EventLog();
+    private final EventLog dead = new EventLog();
+    
+    private int nextSeq = 0;
+    private int sinceFull = 0;
+    private boolean resync = true;
+    //absolute values of the last acked report
+    private int[] base;
+    private int baseSeq;
+    private final ArrayList<Sent> unacked = new ArrayList<Sent>();
+    
+    public StatusReporter(int fullEvery) {
+        this.fullEvery = fullEvery;
+    }
+    
+    public void suspected(int id) {
+        suspects.append(id);
+    }
+    
+    public void removed(int id) {
+        dead.append(id);
+    }
+    
+    /**
+     * @param current absolute values, its id lists are ignored
+     */
+    public Status report(Status current) {
+        int[] values = current.values();
+        Status report;
+        if(base == null || resync || ++sinceFull >= fullEvery){
+            report = Status.fromValues(values);
+            report.baseSeq = Status.FULL;
+            sinceFull = 0;
+            resync = false;
+        } else {
+            int[] delta = new int[values.length];
+            for(int i = 0; i < values.length; i++){
+                delta[i] = values[i] - base[i];
+            }
+            report = Status.fromValues(delta);
+            report.baseSeq = baseSeq;
+        }
+        report.seq = nextSeq++;
+        report.newSuspects = suspects.pending();
+        report.suspectsFrom = suspects.first;
+        report.newDead = dead.pending();
+        report.deadFrom = dead.first;
+        
+        if(unacked.size() == MAX_UNACKED){
+            unacked.remove(0);
+        }
+        unacked.add(new Sent(report.seq, values, suspects.end(), dead.end()));
+        return report;
+    }
+    
+    public void acked(int seq, boolean resyncRequested) {
+        if(resyncRequested){
+            resync = true;
+            return;
+        }
+        for(int i = 0; i < unacked.size(); i++){
+            Sent sent = unacked.get(i);
+            if(sent.seq == seq){
+                base = sent.values;
+                baseSeq = seq;
+                suspects.dropBefore(sent.suspectsEnd);
+                dead.dropBefore(sent.deadEnd);
+                unacked.subList(0, i + 1).clear();
+                return;
+            }
+        }
+    }
+    
+    /*
+    
+    
+    SUPPORTING CODE
+    
+    
+    */
+    
+    private static class Sent {
+        
+        private final int seq;
+        private final int[] values;
+        private final int suspectsEnd;
+        private final int deadEnd;
+        
+        public Sent(int seq, int[] values, int suspectsEnd, int deadEnd) {
+            this.seq = seq;
+            this.values = values;
+            this.suspectsEnd = suspectsEnd;
+            this.deadEnd = deadEnd;
+        }
+    }
+    
+    //append only ids, first is the log index of ids[0]
+    private static class EventLog {
+        
+        private int[] ids = new int[16];
+        private int size = 0;
+        private int first = 0;
+        
+        void append(int id) {
+            if(size == MAX_EVENTS){
+                dropBefore(first + size / 2);
+            }
+            if(size == ids.length){
+                ids = Arrays.copyOf(ids, ids.length * 2);
+            }
+            ids[size++] = id;
+        }
+        
+        int end() {
+            return first + size;
+        }
+        
+        int[] pending() {
+            return Arrays.copyOf(ids, size);
+        }
+        
+        void dropBefore(int index) {
+            int drop = Math.min(size, index - first);
+            if(drop <= 0){
+                return;
+            }
+            System.arraycopy(ids, drop, ids, 0, size - drop);
+            size -= drop;
+            first += drop;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+* To change this license header, choose License Headers in Project Properties.
+* To change this template file, choose Tools | Templates
+* and open the template in the editor.
+*/
+
+package se.kth.swim;
+
+/**
+ * Lifeguard dynamic suspicion timeout for one suspected member. The timeout
+ * starts at max and drops towards min as distinct nodes suspect the member too:
+ * <pre>
+ * timeout(c) = max(min, max - (max - min) * log(c + 1) / log(k + 1))
+ * </pre>
+ * so after k confirmations it is min. Only the first k confirming ids are
+ * kept, further ones cannot shorten the timeout anyway.
+ *
+ * @author fabriziodemaria
+ */
+public final class Suspicion {
+
+    private final long start;
+    private final long min;
+    private final long max;
+    //node that made the suspicion we heard first, never counted as a confirmation
+    private final int origin;
+    private final int[] confirmations;
+    private int count = 0;
+
+    public Suspicion(long start, long min, long max, int k, int origin) {
+        this.start = start;
+        this.min = Math.min(min, max);
+        this.max = max;
+        this.origin = origin;
+        this.confirmations = new int[Math.max(0, k)];
+    }
+
+    /**
+     * @return true if the id is a new confirmation and the timeout got shorter
+     */
+    public boolean confirm(int id) {
+        if(id == origin || count >= confirmations.length){
+            return false;
+        }
+        for(int i = 0; i < count; i++){
+            if(confirmations[i] == id){
+                return false;
+            }
+        }
+        confirmations[count++] = id;
+        return true;
+    }
+
+    public long timeout() {
+        if(count == 0){
+            return max;
+        }
+        if(count >= confirmations.length){
+            return min;
+        }
+        double frac = Math.log(count + 1) / Math.log(confirmations.length + 1);
+        return Math.max(min, max - (long) ((max - min) * frac));
+    }
+
+    /**
+     * @return what is left of the timeout at time now, never negative
+     */
+    public long remaining(long now) {
+        return Math.max(0, start + timeout() - now);
+    }
+
+    public int getConfirmations() {
+        return count;
+    }
+}
@@ -19,76 +19,200 @@
 package se.kth.swim;
 
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.HashSet;
+import java.util.Random;
 import java.util.Set;
 import java.util.UUID;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import se.kth.swim.msg.Ping;
+import se.kth.swim.msg.Shuffle;
+import se.kth.swim.msg.Snapshot;
 import se.kth.swim.msg.Status;
+import se.kth.swim.msg.Sync;
 import se.kth.swim.msg.net.InfoPiggyback;
 import se.kth.swim.msg.net.InfoType;
+import se.kth.swim.msg.net.NetDisconnect;
+import se.kth.swim.msg.net.NetJoin;
+import se.kth.swim.msg.net.NetJoinChunk;
+import se.kth.swim.msg.net.NetMsg;
 import se.kth.swim.msg.net.NetPing;
+import se.kth.swim.msg.net.NetPingReq;
+import se.kth.swim.msg.net.NetPingReqAck;
+import se.kth.swim.msg.net.NetPingReqNack;
 import se.kth.swim.msg.net.NetPong;
+import se.kth.swim.msg.net.NetShuffle;
 import se.kth.swim.msg.net.NetStatus;
+import se.kth.swim.msg.net.NetStatusAck;
+import se.kth.swim.msg.net.NetSync;
+import se.kth.swim.trace.EventTrace;
 import se.sics.kompics.ComponentDefinition;
 import se.sics.kompics.Handler;
 import se.sics.kompics.Init;
+import se.sics.kompics.Negative;
 import se.sics.kompics.Positive;
 import se.sics.kompics.Start;
 import se.sics.kompics.Stop;
 import se.sics.kompics.network.Network;
 import se.sics.kompics.timer.CancelTimeout;
 import se.sics.kompics.timer.SchedulePeriodicTimeout;
-import se.sics.kompics.timer.ScheduleTimeout;
 import se.sics.kompics.timer.Timeout;
 import se.sics.kompics.timer.Timer;
 import se.sics.p2ptoolbox.util.network.NatedAddress;
+import se.sics.p2ptoolbox.util.network.impl.BasicNatedAddress;
 
 
 public class SwimComp extends ComponentDefinition {
 
-    private static final Integer DISSEMINATION_VALUE = 3;
+    //kinds of per-member deadlines kept in the timer wheel
+    private static final int ACK_DEADLINE = 0;
+    private static final int PING_REQ_DEADLINE = 1;
+    private static final int RELAY_DEADLINE = 2;
+    private static final int DEAD_DEADLINE = 3;
+    
+    private static final int WHEEL_SIZE = 64;
+    //every n-th status report carries absolute values
+    private static final int STATUS_FULL_EVERY = 6;
+    //gossip entries per snapshot chunk
+    private static final int JOIN_CHUNK = 64;
+    //ping ticks before asking another member if the snapshot is still incomplete
+    private static final int JOIN_RETRY_TICKS = 5;
+    //a single bucket holds every member
+    private static final boolean[] ALL_MEMBERS = {true};
+    //members of each view sent in a shuffle, besides ourselves
+    private static final int SHUFFLE_ACTIVE = 2;
+    private static final int SHUFFLE_PASSIVE = 4;
+    //non-members whose last update is remembered in partial view mode
+    private static final int RUMOR_CACHE_SIZE = 1024;
+    //recently dead members remembered, and for how many ping periods
+    private static final int DEAD_MEMBERS_SIZE = 4096;
+    private static final int DEAD_MEMBERS_PERIODS = 300;
     
     private static final Logger log = LoggerFactory.getLogger(SwimComp.class);
+    private final EventTrace trace;
     private Positive<Network> network = requires(Network.class);
     private Positive<Timer> timer = requires(Timer.class);
+    private Negative<MembershipPort> membership = provides(MembershipPort.class);
     
-    private final NatedAddress selfAddress;
+    //a nated node moves to other parents when its parents die
+    private NatedAddress selfAddress;
+    private final int parentCount;
     private final MembershipList membershipList;
     //private final Set<NatedAddress> neighboursNodes;
     private final NatedAddress aggregatorAddress;
     //private Set<NatedAddress> suspectedNodes = new HashSet<NatedAddress>();
     
+    private final SwimConfig config;
+    //current timeouts, equal to the configured ones unless adaptive
+    private long ackTimeout;
+    private long pingReqTimeout;
+    private long deadTimeout;
+    //a probe goes out every probeTicks ping ticks, stretched by the local health score
+    private int probeTicks = 1;
+    private int ticksToProbe = 1;
+    //smoothed round trip time of direct probes, -1 until measured
+    private long srtt = -1;
+    //stretches ack timeout and probe interval while we are the slow one
+    private final LocalHealth localHealth;
+    //probed node id -> nacks still expected from its ping-req proxies
+    private final IntHashMap<Integer> pendingNacks = new IntHashMap<Integer>();
+    //suspected node id -> its dynamic suspicion timeout, one per DEAD_DEADLINE
+    private final IntHashMap<Suspicion> suspicions = new IntHashMap<Suspicion>();
+    //late gossip about these does not bring them back
+    private final DeadMembers deadMembers;
+    //anti-entropy every syncTicks ping ticks, 0 if off
+    private final int syncTicks;
+    private int ticksToSync;
+    //join handshake: member asked for a snapshot and the chunks still missing
+    private boolean joined = false;
+    private NatedAddress joinPeer;
+    private boolean[] joinChunks;
+    private int joinMissing;
+    private int ticksToJoinRetry;
+    //partial view mode: the membership list is the active view, these two
+    //are empty in full mode
+    private final PassiveView passiveView;
+    private final RumorCache rumors;
+    //canonical address per node id, every address we keep goes through it
+    private final AddressInterner interner;
+    private final int shuffleTicks;
+    private int ticksToShuffle;
+    private NatedAddress lastProbe;
+    private long lastProbeSent;
+    
     
-    private ArrayList<InfoPiggyback> updates = new ArrayList<InfoPiggyback>();
-    private HashMap<InfoPiggyback, Integer> updatesDisseminationCounter = new HashMap<InfoPiggyback, Integer>();
+    private final DisseminationBuffer disseminationBuffer;
     
     
     
     private UUID pingTimeoutId;
     private UUID statusTimeoutId;
-    private HashMap<NatedAddress,UUID> ackTimeoutIds = new HashMap<NatedAddress,UUID>();
-    private HashMap<NatedAddress,UUID> deadTimeoutIds = new HashMap<NatedAddress,UUID>();
+    //ack, ping-req, relay and dead deadlines, advanced by the ping tick
+    private final TimerWheel deadlines;
+    //as a ping-req proxy: probed node id -> nodes waiting for its ack
+    private final IntHashMap<Set<NatedAddress>> relayRequests = new IntHashMap<Set<NatedAddress>>();
+    
+    //bumped every time we refute a suspicion about ourselves
+    private int selfIncarnation = 0;
     
     private int receivedPings = 0;
     private int receivedPongs = 0;
     
+    //reported to the aggregator
+    private int sentMessages = 0;
+    private int receivedMessages = 0;
+    private int deadCount = 0;
+    private final StatusReporter statusReporter = new StatusReporter(STATUS_FULL_EVERY);
+    
     public SwimComp(SwimInit init) {
         this.selfAddress = init.selfAddress;
+        this.parentCount = selfAddress.isOpen() ? 0 : selfAddress.getParents().size();
         log.info("{} initiating...", selfAddress);
-        this.membershipList = new MembershipList(init.bootstrapNodes,selfAddress);
+        this.trace = new EventTrace(log, selfAddress.getId());
+        this.config = init.config;
+        this.passiveView = new PassiveView(config.isPartialView() ? config.passiveViewSize : 0, new Random());
+        this.rumors = new RumorCache(config.isPartialView() ? RUMOR_CACHE_SIZE : 0);
+        this.interner = new AddressInterner(config.isPartialView() ? RUMOR_CACHE_SIZE + config.activeViewSize + config.passiveViewSize : 0);
+        Set<NatedAddress> active = new HashSet<NatedAddress>();
+        for(NatedAddress node : init.bootstrapNodes){
+            node = interner.update(node);
+            //the bootstrap nodes beyond the active view wait in the passive one
+            if(!config.isPartialView() || active.size() < config.activeViewSize){
+                active.add(node);
+            } else {
+                passiveView.add(node, 0);
+            }
+        }
+        this.membershipList = new MembershipList(active,selfAddress);
         this.aggregatorAddress = init.aggregatorAddress;
+        this.ackTimeout = config.ackTimeout;
+        this.pingReqTimeout = config.pingReqTimeout;
+        this.deadTimeout = config.deadTimeout;
+        this.disseminationBuffer = new DisseminationBuffer(config.disseminationLambda, config.maxPiggyback);
+        this.deadlines = new TimerWheel(config.pingPeriod, WHEEL_SIZE, 4);
+        this.deadMembers = new DeadMembers(DEAD_MEMBERS_SIZE, DEAD_MEMBERS_PERIODS * config.pingPeriod);
+        this.localHealth = new LocalHealth(config.maxLocalHealth);
+        //a partial view has no full membership to compare
+        this.syncTicks = config.syncPeriod > 0 && !config.isPartialView() ? (int) Math.max(1, config.syncPeriod / config.pingPeriod) : 0;
+        this.ticksToSync = syncTicks;
+        this.shuffleTicks = config.isPartialView() && config.shufflePeriod > 0 ? (int) Math.max(1, config.shufflePeriod / config.pingPeriod) : 0;
+        this.ticksToShuffle = shuffleTicks;
         
         subscribe(handleStart, control);
         subscribe(handleStop, control);
         subscribe(handlePing, network);
         subscribe(handlePong, network);
+        subscribe(handlePingReq, network);
+        subscribe(handlePingReqAck, network);
+        subscribe(handlePingReqNack, network);
+        subscribe(handleStatusAck, network);
+        subscribe(handleSync, network);
+        subscribe(handleJoin, network);
+        subscribe(handleJoinChunk, network);
+        subscribe(handleShuffle, network);
+        subscribe(handleDisconnect, network);
         subscribe(handlePingTimeout, timer);
         subscribe(handleStatusTimeout, timer);
-        subscribe(handleAckTimeout, timer);
-        subscribe(handleDeadTimeout, timer);
         
     }
     
@@ -100,6 +224,10 @@ public class SwimComp extends ComponentDefinition {
             
             if (!membershipList.isEmpty()) {
                 schedulePeriodicPing();
+                startJoin();
+            } else {
+                //first node, nothing to join
+                joined = true;
             }
             schedulePeriodicStatus();
         }
@@ -124,50 +252,32 @@ public class SwimComp extends ComponentDefinition {
         
         @Override
         public void handle(NetPing event) {
-            printmyneigh();
-            log.info("{} received ping from:{}", new Object[]{selfAddress.getId(), event.getHeader().getSource()});
+            NatedAddress source = interner.intern(event.getHeader().getSource());
+            trace.event(EventTrace.PING_RECEIVED, source.getId());
             receivedPings++;
+            receivedMessages++;
             
             //Ping from unknown node
-            if(!membershipList.contains(event.getHeader().getSource())){
-                log.info("{} Received ping from node that is not in my membership list {}", new Object[]{selfAddress.getId(), event.getHeader().getSource()});
-                log.info("{} adding happily the node cccc {}", new Object[]{selfAddress.getId(), event.getHeader().getSource()});
-                membershipList.add(event.getHeader().getSource());
-                
-                //Maybe it is the first node in the list -> start pingTimeout
-                if (pingTimeoutId == null) {
-                    schedulePeriodicPing();
+            if(!membershipList.contains(source)){
+                if(buried(source)){
+                    //not taken back, the pong tells it that it is dead
+                } else if(activeViewFull()){
+                    //no room for it, it keeps us in its passive view and we keep it in ours
+                    passiveView.add(interner.update(source), 0);
+                    disconnect(source);
+                } else {
+                    addMember(source);
                 }
-                
-                //save the now info to be disseminated
-                updatesDisseminationCounter.put(new InfoPiggyback(InfoType.NEWNODE,event.getHeader().getSource()), DISSEMINATION_VALUE);
-                
             } else {
-                if(membershipList.isSuspected(event.getHeader().getSource())){
-                    membershipList.unsuspectNode(event.getHeader().getSource());
-                    updatesDisseminationCounter.put(new InfoPiggyback(InfoType.ALIVENODE,event.getHeader().getSource()), DISSEMINATION_VALUE);
-                }
+                //the sender knows its own parents best
+                membershipList.updateAddress(interner.update(source));
+                markAlive(source);
             }
             
-            log.info("{} sending pong to back to :{}", new Object[]{selfAddress.getId(), event.getHeader().getSource()});
-            updates = new ArrayList<InfoPiggyback>(updatesDisseminationCounter.keySet());
-            trigger(new NetPong(selfAddress, event.getHeader().getSource(), updates), network);
-            
-            //decrease counters and remove 0
-            Collection<InfoPiggyback> coll = new LinkedList<InfoPiggyback>();
-            for(InfoPiggyback ipb : updatesDisseminationCounter.keySet()){
-                coll.add(ipb);
-            }
-            for(InfoPiggyback ipb : coll){
-                int newCounter = updatesDisseminationCounter.get(ipb);
-                newCounter--;
-                if(newCounter==0){
-                    updatesDisseminationCounter.remove(ipb);
-                } else {
-                    updatesDisseminationCounter.put(ipb, newCounter);
-                }
-            }
+            mergeUpdates(event.getContent());
             
+            trace.event(EventTrace.PONG_SENT, source.getId());
+            send(new NetPong(selfAddress, source, disseminationBuffer.nextPiggyback(viewSize())));
             
         }
     };
@@ -176,67 +286,38 @@ public class SwimComp extends ComponentDefinition {
         
         @Override
         public void handle(NetPong event) {
-            printmyneigh();
-            log.info("{} received pong from:{}", new Object[]{selfAddress.getId(), event.getHeader().getSource()});
+            trace.event(EventTrace.PONG_RECEIVED, event.getHeader().getSource().getId());
+            receivedMessages++;
             
             //handle the ack mechanism
-            if(membershipList.contains(event.getSource())){
-                System.out.println("Ricevuto ack");
+            if(deadlines.isScheduled(ACK_DEADLINE, event.getSource())){
                 cancelAck(event.getSource());
+                localHealth.success();
+                if(event.getSource().equals(lastProbe)){
+                    sampleRtt(System.currentTimeMillis() - lastProbeSent);
+                }
             }
-            
-            //Control that the pong is from a suspected node
-            if(membershipList.isSuspected(event.getHeader().getSource())){
-                membershipList.unsuspectNode(event.getHeader().getSource());
-                updatesDisseminationCounter.put(new InfoPiggyback(InfoType.ALIVENODE,event.getHeader().getSource()), DISSEMINATION_VALUE);
+            //a late direct ack also ends the indirect probe
+            if(deadlines.isScheduled(PING_REQ_DEADLINE, event.getSource())){
+                cancelPingReqTimeout(event.getSource());
+                pendingNacks.remove(event.getSource().getId());
+                localHealth.failure();
             }
             
-            
-            if(event.getContent().infoList!=null && event.getContent().infoList.size()>0){
-                log.info("There is a list in Pong msg from ", new Object[]{selfAddress.getId(), event.getHeader().getSource()});
-                for(Object ipb2 : event.getContent().infoList){
-                    InfoPiggyback ipb = (InfoPiggyback)ipb2;
-                    
-                    //change to switch-case man :)
-                    if(ipb.getInfoType()==InfoType.NEWNODE){
-                        if(!ipb.getInfoTarget().equals(selfAddress) && !membershipList.contains(ipb.getInfoTarget())){
-                            //log.info("{} adding happily the node from PB info {}", new Object[]{selfAddress.getId(), ipb.getInfoTarget()});
-                            membershipList.add(ipb.getInfoTarget());
-                            updatesDisseminationCounter.put(new InfoPiggyback(InfoType.NEWNODE,ipb.getInfoTarget()), DISSEMINATION_VALUE);
-                        }
-                    } else if (ipb.getInfoType()==InfoType.DEADNODE){
-                        if(membershipList.contains(ipb.getInfoTarget())){
-                            //log.info("Node {} is removing node {} since thinks it is DEAD", new Object[]{selfAddress.getId(), ipb.getInfoTarget().getId()});
-                            membershipList.remove(ipb.getInfoTarget());
-                            updatesDisseminationCounter.put(new InfoPiggyback(InfoType.DEADNODE,ipb.getInfoTarget()), DISSEMINATION_VALUE);
-                        }
-                    } else if (ipb.getInfoType()==InfoType.ALIVENODE){
-                        if(membershipList.isSuspected(ipb.getInfoTarget())){
-                            membershipList.unsuspectNode(ipb.getInfoTarget());
-                            updatesDisseminationCounter.put(new InfoPiggyback(InfoType.ALIVENODE,ipb.getInfoTarget()), DISSEMINATION_VALUE);
-                            if(deadTimeoutIds.containsKey(ipb.getInfoTarget())){
-                                cancelDeadTimeout(ipb.getInfoTarget());
-                            }
-                        }
-                    } else if (ipb.getInfoType()==InfoType.SUSPECTEDNODE){
-                        if(ipb.getInfoTarget().getId()==selfAddress.getId()){
-                            updatesDisseminationCounter.put(new InfoPiggyback(InfoType.ALIVENODE,selfAddress), DISSEMINATION_VALUE);
-                       
-                        } else if (membershipList.contains(ipb.getInfoTarget()) && !membershipList.isSuspected(ipb.getInfoTarget())){
-                            
-//NOTE: should I add the node in suspected mode in this case?
-                            
-                            membershipList.suspectNode(ipb.getInfoTarget());
-                            //check that there is no timeout associated to the event.getAddress already, otherwise the prev UUID is lost
-                            if(!deadTimeoutIds.containsKey(ipb.getInfoTarget()))
-                                scheduleDeadTimeout(ipb.getInfoTarget());
-                            
-                            updatesDisseminationCounter.put(new InfoPiggyback(InfoType.SUSPECTEDNODE,ipb.getInfoTarget()), DISSEMINATION_VALUE);
-                        }
-                    }
-                    
+            //relay the ack to whoever asked us to probe this node
+            Set<NatedAddress> requesters = relayRequests.remove(event.getSource().getId());
+            if(requesters != null){
+                cancelRelayTimeout(event.getSource());
+                for(NatedAddress requester : requesters){
+                    send(new NetPingReqAck(selfAddress, requester, event.getSource(), disseminationBuffer.nextPiggyback(viewSize())));
                 }
             }
+            
+            //Control that the pong is from a suspected node
+            markAlive(event.getHeader().getSource());
+            
+            
+            mergeUpdates(event.getContent());
             receivedPongs++;
         }
     };
@@ -248,6 +329,9 @@ public class SwimComp extends ComponentDefinition {
         @Override
         public void handle(PingTimeout event) {
             
+            deadlines.tick(handleDeadline);
+            trace.flush();
+            
             if(membershipList.isEmpty()){
                 cancelPeriodicPing();
                 return;
@@ -257,16 +341,38 @@ public class SwimComp extends ComponentDefinition {
                 }
             }
             
+            if(config.adaptive){
+                adaptTimeouts();
+            }
+            deadMembers.expire(System.currentTimeMillis());
+            if(!joined && --ticksToJoinRetry <= 0){
+                startJoin();
+            }
+            if(syncTicks > 0 && --ticksToSync <= 0){
+                ticksToSync = syncTicks;
+                startSync();
+            }
+            if(shuffleTicks > 0 && --ticksToShuffle <= 0){
+                ticksToShuffle = shuffleTicks;
+                startShuffle();
+            }
+            if(--ticksToProbe > 0){
+                return;
+            }
+            ticksToProbe = probeTicks * localHealth.multiplier();
 
-            NatedAddress partnerAddress = membershipList.randomNode();
+            NatedAddress partnerAddress = membershipList.nextToProbe();
             
             //check if still waiting for an answer from the node
-            if(!ackTimeoutIds.containsKey(partnerAddress)){
-                log.info("{} sending ping to partner:{}", new Object[]{selfAddress.getId(), partnerAddress});
+            if(!deadlines.isScheduled(ACK_DEADLINE, partnerAddress) && !deadlines.isScheduled(PING_REQ_DEADLINE, partnerAddress)){
+                trace.event(EventTrace.PING_SENT, partnerAddress.getId());
                 scheduleAck(partnerAddress);
-                trigger(new NetPing(selfAddress, partnerAddress), network);
+                lastProbe = partnerAddress;
+                lastProbeSent = System.currentTimeMillis();
+                send(new NetPing(selfAddress, partnerAddress, disseminationBuffer.nextPiggyback(viewSize())));
             } else {
-                log.info("{} FAIL sending ping to partner (waiting for ack):{}", new Object[]{selfAddress.getId(), partnerAddress});
+                //still waiting for an answer from the last probe
+                trace.event(EventTrace.PROBE_SKIPPED, partnerAddress.getId());
             }
             
             
@@ -277,55 +383,751 @@ public class SwimComp extends ComponentDefinition {
         
         @Override
         public void handle(StatusTimeout event) {
-            log.info("{} sending status to aggregator:{}", new Object[]{selfAddress.getId(), aggregatorAddress});
-            trigger(new NetStatus(selfAddress, aggregatorAddress, new Status(receivedPings)), network);
+            trace.event(EventTrace.STATUS_SENT, aggregatorAddress.getId(), receivedPings);
+            Status status = new Status(receivedPings, membershipList.size(), membershipList.suspectedCount(), deadCount,
+                    selfIncarnation, disseminationBuffer.size(), sentMessages, receivedMessages);
+            trigger(new NetStatus(selfAddress, aggregatorAddress, statusReporter.report(status)), network);
         }
     };
     
-    private Handler<AckTimeout> handleAckTimeout = new Handler<AckTimeout>() {
+    private Handler<NetStatusAck> handleStatusAck = new Handler<NetStatusAck>() {
         
         @Override
-        public void handle(AckTimeout event) {
+        public void handle(NetStatusAck event) {
+            statusReporter.acked(event.getContent().seq, event.getContent().resync);
+        }
+    };
+    
+    private final TimerWheel.Listener handleDeadline = new TimerWheel.Listener() {
+        
+        @Override
+        public void expired(int kind, NatedAddress address) {
+            switch(kind){
+                case ACK_DEADLINE:
+                    onAckTimeout(address);
+                    break;
+                case PING_REQ_DEADLINE:
+                    onPingReqTimeout(address);
+                    break;
+                case RELAY_DEADLINE:
+                    onRelayTimeout(address);
+                    break;
+                case DEAD_DEADLINE:
+                    onDeadTimeout(address);
+                    break;
+            }
+        }
+    };
+    
+    private Handler<NetSync> handleSync = new Handler<NetSync>() {
+        
+        @Override
+        public void handle(NetSync event) {
+            NatedAddress peer = event.getHeader().getSource();
+            Sync sync = event.getContent();
+            trace.event(EventTrace.SYNC_RECEIVED, peer.getId(), sync.buckets);
+            receivedMessages++;
+            if(Integer.bitCount(sync.buckets) != 1 || (sync.digest != null && sync.digest.length != sync.buckets)){
+                log.warn("{} dropping sync from {} with {} buckets", new Object[]{selfAddress.getId(), peer.getId(), sync.buckets});
+                return;
+            }
             
-            cancelAck(event.getAddress());
+            if(sync.digest != null){
+                //pull: send our side of every bucket that differs and ask for theirs
+                int[] mine = digest(sync.buckets);
+                boolean[] differ = new boolean[sync.buckets];
+                int count = 0;
+                for(int i = 0; i < sync.buckets; i++){
+                    if(mine[i] != sync.digest[i]){
+                        differ[i] = true;
+                        count++;
+                    }
+                }
+                if(count == 0){
+                    return;
+                }
+                int[] wanted = new int[count];
+                for(int i = 0, j = 0; i < sync.buckets; i++){
+                    if(differ[i]){
+                        wanted[j++] = i;
+                    }
+                }
+                trace.event(EventTrace.SYNC_SENT, peer.getId(), count);
+                send(new NetSync(selfAddress, peer, new Sync(sync.buckets, syncEntries(differ), wanted)));
+                return;
+            }
             
-            if(membershipList.isSuspected(event.getAddress())){
-                //do nothing
+            //entries are news for us only, the regular gossip is not flooded with them
+            mergeUpdates(new Ping(withoutForgottenDeaths(sync.infoList)), false);
+            if(pingTimeoutId == null && !membershipList.isEmpty()){
+                schedulePeriodicPing();
+            }
+            if(sync.wanted != null){
+                //push: our side of the buckets, already merged with theirs
+                boolean[] wanted = new boolean[sync.buckets];
+                for(int bucket : sync.wanted){
+                    if(bucket >= 0 && bucket < sync.buckets){
+                        wanted[bucket] = true;
+                    }
+                }
+                trace.event(EventTrace.SYNC_SENT, peer.getId(), sync.wanted.length);
+                send(new NetSync(selfAddress, peer, new Sync(sync.buckets, syncEntries(wanted), null)));
+            }
+        }
+    };
+    
+    private Handler<NetJoin> handleJoin = new Handler<NetJoin>() {
+        
+        @Override
+        public void handle(NetJoin event) {
+            NatedAddress joiner = interner.intern(event.getHeader().getSource());
+            trace.event(EventTrace.JOIN_RECEIVED, joiner.getId());
+            receivedMessages++;
+            //the arrival goes out as NEWNODE gossip
+            if(!membershipList.contains(joiner)){
+                //a joiner we declared dead comes back with a higher incarnation once it hears of it
+                if(!buried(joiner)){
+                    if(activeViewFull()){
+                        //a joiner always gets in, a random member makes room
+                        NatedAddress evicted = membershipList.randomNode();
+                        demote(evicted);
+                        disconnect(evicted);
+                    }
+                    addMember(joiner);
+                }
             } else {
-                membershipList.suspectNode(event.getAddress());
-                log.info("{}  suspects node: {}", new Object[]{selfAddress.getId(), event.getAddress().getId()});
-                updatesDisseminationCounter.put(new InfoPiggyback(InfoType.SUSPECTEDNODE, event.getAddress()),DISSEMINATION_VALUE);
-                
-                //check that there is no timeout associated to the event.getAddress already, otherwise the prev UUID is lost
-                if(!deadTimeoutIds.containsKey(event.getAddress()))
-                    scheduleDeadTimeout(event.getAddress());
+                membershipList.updateAddress(interner.update(joiner));
+                markAlive(joiner);
+            }
+            mergeUpdates(event.getContent());
+            
+            //the recent deaths too, so that late gossip cannot bring them back to the joiner
+            ArrayList<InfoPiggyback> entries = new ArrayList<InfoPiggyback>(viewSize() + deadMembers.size() + 1);
+            membershipList.syncEntries(ALL_MEMBERS, entries);
+            passiveView.entries(entries);
+            deadMembers.syncEntries(ALL_MEMBERS, entries);
+            entries.add(new InfoPiggyback(InfoType.NEWNODE, selfAddress, selfIncarnation));
+            int chunks = (entries.size() + JOIN_CHUNK - 1) / JOIN_CHUNK;
+            for(int i = 0; i < chunks; i++){
+                int from = i * JOIN_CHUNK;
+                ArrayList<InfoPiggyback> chunk = new ArrayList<InfoPiggyback>(entries.subList(from, Math.min(entries.size(), from + JOIN_CHUNK)));
+                send(new NetJoinChunk(selfAddress, joiner, new Snapshot(i, chunks, chunk)));
             }
         }
     };
     
-    private Handler<DeadTimeout> handleDeadTimeout = new Handler<DeadTimeout>() {
+    private Handler<NetJoinChunk> handleJoinChunk = new Handler<NetJoinChunk>() {
         
         @Override
-        public void handle(DeadTimeout event) {
-            printmyneigh();
-            if(deadTimeoutIds.containsKey(event.getAddress()))
-                cancelDeadTimeout(event.getAddress());
+        public void handle(NetJoinChunk event) {
+            NatedAddress source = event.getHeader().getSource();
+            Snapshot chunk = event.getContent();
+            trace.event(EventTrace.JOIN_CHUNK_RECEIVED, source.getId(), chunk.chunk);
+            receivedMessages++;
+            //a snapshot is old news for everybody else
+            mergeUpdates(chunk, false);
             
-            if(membershipList.isSuspected(event.getAddress())){
-                updatesDisseminationCounter.put(new InfoPiggyback(InfoType.DEADNODE, event.getAddress()),DISSEMINATION_VALUE);
-                if(membershipList.contains(event.getAddress())){
-                    log.info("Node {} is removing node {} since thinks it is DEAD", new Object[]{selfAddress.getId(), event.getAddress().getId()});
-                    membershipList.remove(event.getAddress());
+            if(joined || joinPeer == null || !joinPeer.getId().equals(source.getId())){
+                return;
+            }
+            if(joinChunks == null || joinChunks.length != chunk.chunks){
+                joinChunks = new boolean[chunk.chunks];
+                joinMissing = chunk.chunks;
+            }
+            if(chunk.chunk >= 0 && chunk.chunk < joinChunks.length && !joinChunks[chunk.chunk]){
+                joinChunks[chunk.chunk] = true;
+                if(--joinMissing == 0){
+                    joined = true;
+                    joinChunks = null;
+                    log.info("{} joined through {} with a view of {} members", new Object[]{selfAddress.getId(), source.getId(), membershipList.size()});
                 }
-                membershipList.unsuspectNode(event.getAddress());
             }
+        }
+    };
+    
+    private Handler<NetShuffle> handleShuffle = new Handler<NetShuffle>() {
+        
+        @Override
+        public void handle(NetShuffle event) {
+            NatedAddress peer = event.getHeader().getSource();
+            Shuffle shuffle = event.getContent();
+            int received = shuffle.infoList == null ? 0 : shuffle.infoList.size();
+            trace.event(EventTrace.SHUFFLE_RECEIVED, peer.getId(), received);
+            receivedMessages++;
+            if(!shuffle.reply){
+                //sampled before merging, so the peer does not get its own entries back
+                ArrayList<InfoPiggyback> sample = new ArrayList<InfoPiggyback>(received);
+                passiveView.sample(received, sample);
+                trace.event(EventTrace.SHUFFLE_SENT, peer.getId(), sample.size());
+                send(new NetShuffle(selfAddress, peer, new Shuffle(sample, true)));
+            }
+            if(shuffle.infoList == null){
+                return;
+            }
+            for(InfoPiggyback ipb : shuffle.infoList){
+                NatedAddress node = interner.intern(ipb.getInfoTarget());
+                if(!node.getId().equals(selfAddress.getId()) && !membershipList.contains(node)
+                        && !deadMembers.buries(node.getId(), ipb.getIncarnationValue())){
+                    passiveView.add(interner.update(node), ipb.getIncarnationValue());
+                }
+            }
+        }
+    };
+    
+    private Handler<NetDisconnect> handleDisconnect = new Handler<NetDisconnect>() {
+        
+        @Override
+        public void handle(NetDisconnect event) {
+            NatedAddress peer = event.getHeader().getSource();
+            trace.event(EventTrace.DISCONNECT_RECEIVED, peer.getId());
+            receivedMessages++;
+            mergeUpdates(event.getContent());
+            if(membershipList.contains(peer)){
+                demote(peer);
+                promote();
+            }
+        }
+    };
+    
+    private void onAckTimeout(NatedAddress address) {
+        //no direct ack, ask k other members to probe the node for us
+        ArrayList<NatedAddress> proxies = membershipList.randomNodes(config.pingReqFanout, address);
+        if(proxies.isEmpty()){
+            suspect(address);
+            return;
+        }
+        for(NatedAddress proxy : proxies){
+            trace.event(EventTrace.PING_REQ_SENT, proxy.getId(), address.getId());
+            send(new NetPingReq(selfAddress, proxy, address, disseminationBuffer.nextPiggyback(viewSize()), pingReqTimeout));
+        }
+        pendingNacks.put(address.getId(), proxies.size());
+        schedulePingReqTimeout(address);
+    }
+    
+    private void onPingReqTimeout(NatedAddress address) {
+        //proxies that did not even nack suggest the problem is on our side
+        Integer missing = pendingNacks.remove(address.getId());
+        if(missing != null && missing > 0){
+            localHealth.failure();
+        }
+        suspect(address);
+    }
+    
+    private Handler<NetPingReq> handlePingReq = new Handler<NetPingReq>() {
+        
+        @Override
+        public void handle(NetPingReq event) {
+            trace.event(EventTrace.PING_REQ_RECEIVED, event.getHeader().getSource().getId(), event.getToPing().getId());
+            receivedMessages++;
+            mergeUpdates(event.getContent());
             
+            NatedAddress target = event.getToPing();
+            if(target.getId().equals(selfAddress.getId())){
+                return;
+            }
+            Set<NatedAddress> requesters = relayRequests.get(target.getId());
+            if(requesters == null){
+                requesters = new HashSet<NatedAddress>();
+                relayRequests.put(target.getId(), requesters);
+                scheduleRelayTimeout(target, event.getTimeout());
+                send(new NetPing(selfAddress, target, disseminationBuffer.nextPiggyback(viewSize())));
+            }
+            requesters.add(event.getHeader().getSource());
         }
+    };
+    
+    private Handler<NetPingReqAck> handlePingReqAck = new Handler<NetPingReqAck>() {
         
+        @Override
+        public void handle(NetPingReqAck event) {
+            NatedAddress acked = event.getAckedNode();
+            trace.event(EventTrace.PING_REQ_ACK_RECEIVED, event.getHeader().getSource().getId(), acked.getId());
+            receivedMessages++;
+            mergeUpdates(event.getContent());
+            
+            if(deadlines.isScheduled(PING_REQ_DEADLINE, acked)){
+                cancelPingReqTimeout(acked);
+            }
+            pendingNacks.remove(acked.getId());
+            markAlive(acked);
+        }
     };
     
+    private Handler<NetPingReqNack> handlePingReqNack = new Handler<NetPingReqNack>() {
+        
+        @Override
+        public void handle(NetPingReqNack event) {
+            NatedAddress nacked = event.getNackedNode();
+            trace.event(EventTrace.PING_REQ_NACK_RECEIVED, event.getHeader().getSource().getId(), nacked.getId());
+            receivedMessages++;
+            mergeUpdates(event.getContent());
+            
+            Integer missing = pendingNacks.get(nacked.getId());
+            if(missing != null && missing > 0){
+                pendingNacks.put(nacked.getId(), missing - 1);
+            }
+        }
+    };
+    
+    private void onRelayTimeout(NatedAddress address) {
+        //the probed node never answered, tell the requesters we at least tried
+        Set<NatedAddress> requesters = relayRequests.remove(address.getId());
+        if(requesters == null){
+            return;
+        }
+        for(NatedAddress requester : requesters){
+            trace.event(EventTrace.PING_REQ_NACK_SENT, requester.getId(), address.getId());
+            send(new NetPingReqNack(selfAddress, requester, address, disseminationBuffer.nextPiggyback(viewSize())));
+        }
+    }
+    
+    private void onDeadTimeout(NatedAddress address) {
+        suspicions.remove(address.getId());
+        if(membershipList.isSuspected(address)){
+            disseminationBuffer.add(new InfoPiggyback(InfoType.DEADNODE, address, membershipList.getIncarnation(address)));
+            deadMembers.add(address, membershipList.getIncarnation(address), System.currentTimeMillis());
+            if(membershipList.contains(address)){
+                if(log.isInfoEnabled()){
+                    log.info("{} removing node {} since thinks it is DEAD", new Object[]{selfAddress.getId(), address.getId()});
+                }
+                membershipList.remove(address);
+                interner.remove(address.getId());
+                deadCount++;
+                statusReporter.removed(address.getId());
+                announce(address, InfoType.DEADNODE);
+                promote();
+                refreshParents();
+            }
+            membershipList.unsuspectNode(address);
+        }
+        
+    }
+    
+    //TCP style smoothing, srtt = 7/8 srtt + 1/8 sample
+    private void sampleRtt(long rtt) {
+        srtt = srtt < 0 ? rtt : (7 * srtt + rtt) / 8;
+    }
+    
+    private void adaptTimeouts() {
+        long tick = config.pingPeriod;
+        if(srtt >= 0){
+            long rttBound = config.rttMultiplier * Math.max(1, srtt);
+            ackTimeout = Math.max(tick, Math.min(config.ackTimeout, rttBound));
+            pingReqTimeout = Math.max(tick, Math.min(config.pingReqTimeout, 2 * rttBound));
+            probeTicks = (int) Math.max(1, (rttBound + tick - 1) / tick);
+        }
+        int logN = Math.max(1, 32 - Integer.numberOfLeadingZeros(viewSize()));
+        deadTimeout = Math.max(config.deadTimeout, config.suspicionMultiplier * logN * probeTicks * tick);
+    }
+    
+    private void suspect(NatedAddress address) {
+        if(membershipList.isSuspected(address) || !membershipList.contains(address)){
+            return;
+        }
+        membershipList.suspectNode(address);
+        statusReporter.suspected(address.getId());
+        announce(address, InfoType.SUSPECTEDNODE);
+        if(log.isInfoEnabled()){
+            log.info("{} suspects node: {}", new Object[]{selfAddress.getId(), address.getId()});
+        }
+        disseminationBuffer.add(new InfoPiggyback(InfoType.SUSPECTEDNODE, address, membershipList.getIncarnation(address), selfAddress.getId()));
+        
+        //keep the running timeout, scheduling again would restart it
+        if(!deadlines.isScheduled(DEAD_DEADLINE, address))
+            scheduleDeadTimeout(address, selfAddress.getId());
+    }
+    
+    //shared by every message type carrying gossip
+    private void mergeUpdates(Ping content) {
+        mergeUpdates(content, true);
+    }
+    
+    //with gossip off the applied updates are not queued for dissemination
+    private void mergeUpdates(Ping content, boolean gossip) {
+        if(content.infoList==null){
+            return;
+        }
+        for(InfoPiggyback ipb : content.infoList){
+            NatedAddress target = ipb.getInfoTarget();
+            int incarnation = ipb.getIncarnationValue();
+            
+            if(target.getId().equals(selfAddress.getId())){
+                //refute suspicions about ourselves with a fresh incarnation
+                if(ipb.getInfoType()==InfoType.SUSPECTEDNODE && incarnation>=selfIncarnation){
+                    selfIncarnation = incarnation + 1;
+                    localHealth.failure();
+                    if(log.isInfoEnabled()){
+                        log.info("{} refuting suspicion, incarnation now {}", new Object[]{selfAddress.getId(), selfIncarnation});
+                    }
+                    disseminationBuffer.add(new InfoPiggyback(InfoType.ALIVENODE, selfAddress, selfIncarnation));
+                }
+                //declared dead, the others take us back only with a higher incarnation
+                if(ipb.getInfoType()==InfoType.DEADNODE && incarnation>=selfIncarnation){
+                    selfIncarnation = incarnation + 1;
+                    if(log.isInfoEnabled()){
+                        log.info("{} refuting death, incarnation now {}", new Object[]{selfAddress.getId(), selfIncarnation});
+                    }
+                    disseminationBuffer.add(new InfoPiggyback(InfoType.NEWNODE, selfAddress, selfIncarnation));
+                }
+                continue;
+            }
+            //every piggyback brings its own copy of the address, what we relay is the
+            //canonical one if we have it, what we keep becomes canonical on admission
+            target = interner.intern(target);
+            ipb = withTarget(ipb, target);
+            
+            if(!membershipList.contains(target)){
+                //late news about a node that died since
+                if(ipb.getInfoType()!=InfoType.DEADNODE && deadMembers.buries(target.getId(), incarnation)){
+                    continue;
+                }
+                if(config.isPartialView()){
+                    mergePassive(ipb, gossip);
+                } else if(ipb.getInfoType()==InfoType.DEADNODE){
+                    //a node we never had or already removed, so a late NEWNODE does not add it
+                    deadMembers.add(target, incarnation, System.currentTimeMillis());
+                } else if(ipb.getInfoType()==InfoType.NEWNODE){
+                    admit(target, incarnation);
+                    refreshParents();
+                    if(gossip){
+                        disseminationBuffer.add(ipb);
+                    }
+                } else if(ipb.getInfoType()==InfoType.SUSPECTEDNODE){
+                    //a member the others already suspect (a joiner learns of it from the
+                    //snapshot), it comes in suspected with its own dead timeout
+                    admit(target, incarnation);
+                    membershipList.suspectNode(target);
+                    statusReporter.suspected(target.getId());
+                    announce(target, InfoType.SUSPECTEDNODE);
+                    scheduleDeadTimeout(target, ipb.getSuspecter());
+                    refreshParents();
+                    if(gossip){
+                        disseminationBuffer.add(ipb);
+                    }
+                }
+                continue;
+            }
+            
+            //drop whatever is not newer than what we already know
+            InfoType known = membershipList.isSuspected(target) ? InfoType.SUSPECTEDNODE : InfoType.ALIVENODE;
+            //the same suspicion made by another node shortens its timeout, a
+            //peer merely relaying it is not a confirmation
+            if(ipb.getInfoType()==InfoType.SUSPECTEDNODE && known==InfoType.SUSPECTEDNODE
+                    && incarnation==membershipList.getIncarnation(target)){
+                confirmSuspicion(target, ipb.getSuspecter());
+                continue;
+            }
+            if(!InfoPiggyback.overrides(ipb.getInfoType(), incarnation, known, membershipList.getIncarnation(target))){
+                continue;
+            }
+            
+            switch(ipb.getInfoType()){
+                case NEWNODE:
+                case ALIVENODE:
+                    membershipList.setIncarnation(target, incarnation);
+                    //a newer incarnation of a nated node may come with new parents
+                    target = interner.update(target);
+                    ipb = withTarget(ipb, target);
+                    membershipList.updateAddress(target);
+                    if(membershipList.isSuspected(target)){
+                        membershipList.unsuspectNode(target);
+                        announce(target, InfoType.ALIVENODE);
+                        if(deadlines.isScheduled(DEAD_DEADLINE, target)){
+                            cancelDeadTimeout(target);
+                        }
+                    }
+                    break;
+                case SUSPECTEDNODE:
+                    membershipList.setIncarnation(target, incarnation);
+                    membershipList.suspectNode(target);
+                    announce(target, InfoType.SUSPECTEDNODE);
+                    //keep the running timeout, scheduling again would restart it
+                    if(!deadlines.isScheduled(DEAD_DEADLINE, target)){
+                        scheduleDeadTimeout(target, ipb.getSuspecter());
+                    } else {
+                        confirmSuspicion(target, ipb.getSuspecter());
+                    }
+                    break;
+                case DEADNODE:
+                    //log.info("Node {} is removing node {} since thinks it is DEAD", new Object[]{selfAddress.getId(), target.getId()});
+                    if(deadlines.isScheduled(DEAD_DEADLINE, target)){
+                        cancelDeadTimeout(target);
+                    }
+                    membershipList.remove(target);
+                    interner.remove(target.getId());
+                    deadMembers.add(target, incarnation, System.currentTimeMillis());
+                    deadCount++;
+                    statusReporter.removed(target.getId());
+                    announce(target, InfoType.DEADNODE);
+                    promote();
+                    refreshParents();
+                    //the same news about what is now a non-member is not relayed again
+                    if(config.isPartialView()){
+                        rumors.isNew(ipb);
+                    }
+                    break;
+            }
+            //replaces any older update queued about the same node
+            if(gossip){
+                disseminationBuffer.add(ipb);
+            }
+        }
+    }
+    
+    /**
+     * Partial view mode: news about a node out of the active view. A new node
+     * takes a free active slot or goes passive, a dead one leaves the passive
+     * view. Every update is relayed the first time only, the rumor cache
+     * stands in for the membership entry the node does not have.
+     */
+    private void mergePassive(InfoPiggyback ipb, boolean gossip) {
+        NatedAddress target = ipb.getInfoTarget();
+        int incarnation = ipb.getIncarnationValue();
+        switch(ipb.getInfoType()){
+            case NEWNODE:
+                if(!activeViewFull()){
+                    admit(target, incarnation);
+                    refreshParents();
+                } else {
+                    passiveView.add(interner.update(target), incarnation);
+                }
+                break;
+            case ALIVENODE:
+                if(passiveView.contains(target.getId()) && incarnation > passiveView.getIncarnation(target.getId())){
+                    target = interner.update(target);
+                    ipb = withTarget(ipb, target);
+                    passiveView.add(target, incarnation);
+                }
+                break;
+            case DEADNODE:
+                passiveView.remove(target.getId());
+                interner.remove(target.getId());
+                deadMembers.add(target, incarnation, System.currentTimeMillis());
+                break;
+        }
+        if(gossip && rumors.isNew(ipb)){
+            disseminationBuffer.add(ipb);
+        }
+    }
+    
+    //received piggybacks may be shared with other receivers, they are never changed
+    private static InfoPiggyback withTarget(InfoPiggyback ipb, NatedAddress target) {
+        if(ipb.getInfoTarget() == target){
+            return ipb;
+        }
+        return new InfoPiggyback(ipb.getInfoType(), target, ipb.getIncarnationValue(), ipb.getSuspecter());
+    }
+    
+    //direct contact with a node is enough to stop suspecting it locally,
+    //the rest of the group waits for the node to refute with a new incarnation
+    private void markAlive(NatedAddress address) {
+        if(membershipList.isSuspected(address)){
+            membershipList.unsuspectNode(address);
+            announce(address, InfoType.ALIVENODE);
+            if(deadlines.isScheduled(DEAD_DEADLINE, address)){
+                cancelDeadTimeout(address);
+            }
+        }
+    }
+    
+    /**
+     * A nated node drops the parents that left the membership and fills up to
+     * its initial parent count with random open members, then gossips the new
+     * address with a fresh incarnation so the others relay through the new
+     * parents.
+     */
+    private void refreshParents() {
+        if(selfAddress.isOpen()){
+            return;
+        }
+        Set<NatedAddress> parents = new HashSet<NatedAddress>();
+        for(NatedAddress parent : selfAddress.getParents()){
+            //in partial view mode a parent may well be out of the active view and alive
+            if(membershipList.contains(parent) || passiveView.contains(parent.getId())){
+                parents.add(parent);
+            }
+        }
+        boolean changed = parents.size() != selfAddress.getParents().size();
+        while(parents.size() < parentCount){
+            NatedAddress replacement = membershipList.randomOpenNode(parents);
+            if(replacement == null){
+                break;
+            }
+            parents.add(replacement);
+            changed = true;
+        }
+        //with no open member left a dead parent is still better than none
+        if(!changed || parents.isEmpty()){
+            return;
+        }
+        selfAddress = new BasicNatedAddress(selfAddress.getBaseAdr(), selfAddress.getNatType(), parents);
+        selfIncarnation++;
+        if(log.isInfoEnabled()){
+            log.info("{} moved to parents {}, incarnation now {}", new Object[]{selfAddress.getId(), parents, selfIncarnation});
+        }
+        disseminationBuffer.add(new InfoPiggyback(InfoType.ALIVENODE, selfAddress, selfIncarnation));
+    }
+    
+    private void addMember(NatedAddress address) {
+        address = interner.update(address);
+        trace.event(EventTrace.MEMBER_ADDED, address.getId());
+        membershipList.add(address);
+        passiveView.remove(address.getId());
+        announce(address, InfoType.NEWNODE);
+        refreshParents();
+        
+        //Maybe it is the first node in the list -> start pingTimeout
+        if (pingTimeoutId == null) {
+            schedulePeriodicPing();
+        }
+        
+        //save the now info to be disseminated
+        disseminationBuffer.add(new InfoPiggyback(InfoType.NEWNODE, address, 0));
+    }
+    
+    //into the active view with what we know of the node, no gossip
+    private void admit(NatedAddress address, int incarnation) {
+        address = interner.update(address);
+        membershipList.add(address, false, incarnation);
+        //only ever called with an incarnation above the death, if any
+        deadMembers.remove(address.getId());
+        passiveView.remove(address.getId());
+        announce(address, InfoType.NEWNODE);
+    }
+    
+    /**
+     * A node we declared dead is not taken back on direct contact, the death
+     * goes out again so it hears of it and comes back with a higher
+     * incarnation.
+     */
+    private boolean buried(NatedAddress address) {
+        int incarnation = deadMembers.getIncarnation(address.getId());
+        if(incarnation < 0){
+            return false;
+        }
+        disseminationBuffer.add(new InfoPiggyback(InfoType.DEADNODE, address, incarnation));
+        return true;
+    }
+    
+    //a death we have no record of and nothing to remove for was forgotten (or
+    //never mattered here), taking it back from a peer that still remembers it
+    //would keep the record bouncing between the two forever
+    private ArrayList<InfoPiggyback> withoutForgottenDeaths(ArrayList<InfoPiggyback> entries) {
+        if(entries == null){
+            return null;
+        }
+        ArrayList<InfoPiggyback> kept = new ArrayList<InfoPiggyback>(entries.size());
+        for(InfoPiggyback ipb : entries){
+            int id = ipb.getInfoTarget().getId();
+            if(ipb.getInfoType() == InfoType.DEADNODE && id != selfAddress.getId() && !deadMembers.contains(id)
+                    && !membershipList.contains(ipb.getInfoTarget()) && !passiveView.contains(id)){
+                continue;
+            }
+            kept.add(ipb);
+        }
+        return kept;
+    }
+    
+    private boolean activeViewFull() {
+        return config.isPartialView() && membershipList.size() >= config.activeViewSize;
+    }
+    
+    //what we know of the group, sizes the dissemination and the timeouts
+    private int viewSize() {
+        return membershipList.size() + passiveView.size();
+    }
+    
+    //out of the active view without being declared dead, the node goes passive
+    private void demote(NatedAddress address) {
+        NatedAddress known = membershipList.getAddress(address.getId());
+        int incarnation = membershipList.getIncarnation(known);
+        cancelAck(known);
+        cancelPingReqTimeout(known);
+        cancelDeadTimeout(known);
+        pendingNacks.remove(known.getId());
+        membershipList.remove(known);
+        passiveView.add(known, incarnation);
+    }
+    
+    //refills the active view from the passive one after a member left it
+    private void promote() {
+        while(config.isPartialView() && membershipList.size() < config.activeViewSize && passiveView.size() > 0){
+            NatedAddress node = passiveView.randomNode();
+            trace.event(EventTrace.MEMBER_ADDED, node.getId());
+            admit(node, passiveView.getIncarnation(node.getId()));
+        }
+        if(pingTimeoutId == null && !membershipList.isEmpty()){
+            schedulePeriodicPing();
+        }
+    }
+    
+    private void disconnect(NatedAddress address) {
+        trace.event(EventTrace.DISCONNECT_SENT, address.getId());
+        send(new NetDisconnect(selfAddress, address, disseminationBuffer.nextPiggyback(viewSize())));
+    }
+    
+    //one hop HyParView shuffle with a random active member: ourselves, a few
+    //active and a few passive members, answered with a passive sample
+    private void startShuffle() {
+        NatedAddress peer = membershipList.randomNode();
+        ArrayList<InfoPiggyback> sample = new ArrayList<InfoPiggyback>(1 + SHUFFLE_ACTIVE + SHUFFLE_PASSIVE);
+        sample.add(new InfoPiggyback(InfoType.NEWNODE, selfAddress, selfIncarnation));
+        for(NatedAddress member : membershipList.randomNodes(SHUFFLE_ACTIVE, peer)){
+            sample.add(new InfoPiggyback(InfoType.NEWNODE, member, membershipList.getIncarnation(member)));
+        }
+        passiveView.sample(SHUFFLE_PASSIVE, sample);
+        trace.event(EventTrace.SHUFFLE_SENT, peer.getId(), sample.size());
+        send(new NetShuffle(selfAddress, peer, new Shuffle(sample, false)));
+    }
+    
+    //asks a random member for its view, again with another one every JOIN_RETRY_TICKS until complete
+    private void startJoin() {
+        joinPeer = membershipList.randomNode();
+        joinChunks = null;
+        ticksToJoinRetry = JOIN_RETRY_TICKS;
+        trace.event(EventTrace.JOIN_SENT, joinPeer.getId());
+        send(new NetJoin(selfAddress, joinPeer, disseminationBuffer.nextPiggyback(viewSize())));
+    }
+    
+    //push-pull anti-entropy, the digest goes first and the entries only for the buckets that differ
+    private void startSync() {
+        NatedAddress peer = membershipList.randomNode();
+        int buckets = SyncDigest.buckets(membershipList.size() + 1);
+        trace.event(EventTrace.SYNC_SENT, peer.getId(), buckets);
+        send(new NetSync(selfAddress, peer, new Sync(buckets, digest(buckets))));
+    }
+    
+    //we are part of the view the others have, so our own entry is in the digest too
+    private int[] digest(int buckets) {
+        int[] hashes = new int[buckets];
+        membershipList.digest(hashes);
+        deadMembers.digest(hashes);
+        hashes[SyncDigest.bucket(selfAddress.getId(), buckets)] += SyncDigest.hash(selfAddress.getId(), selfIncarnation, false);
+        return hashes;
+    }
+    
+    private ArrayList<InfoPiggyback> syncEntries(boolean[] wanted) {
+        ArrayList<InfoPiggyback> entries = new ArrayList<InfoPiggyback>();
+        membershipList.syncEntries(wanted, entries);
+        deadMembers.syncEntries(wanted, entries);
+        if(wanted[SyncDigest.bucket(selfAddress.getId(), wanted.length)]){
+            entries.add(new InfoPiggyback(InfoType.NEWNODE, selfAddress, selfIncarnation));
+        }
+        return entries;
+    }
+    
+    //tells the other components of the host, the nat traversal drops failed parents
+    private void announce(NatedAddress address, InfoType type) {
+        trigger(new MembershipPort.MemberUpdate(address, type), membership);
+    }
+    
+    private void send(NetMsg<?> msg) {
+        sentMessages++;
+        trigger(msg, network);
+    }
+    
     private void schedulePeriodicPing() {
-        SchedulePeriodicTimeout spt = new SchedulePeriodicTimeout(1000, 1000);
+        SchedulePeriodicTimeout spt = new SchedulePeriodicTimeout(config.pingPeriod, config.pingPeriod);
         PingTimeout sc = new PingTimeout(spt);
         spt.setTimeoutEvent(sc);
         pingTimeoutId = sc.getTimeoutId();
@@ -339,7 +1141,7 @@ public class SwimComp extends ComponentDefinition {
     }
     
     private void schedulePeriodicStatus() {
-        SchedulePeriodicTimeout spt = new SchedulePeriodicTimeout(10000, 10000);
+        SchedulePeriodicTimeout spt = new SchedulePeriodicTimeout(config.statusPeriod, config.statusPeriod);
         StatusTimeout sc = new StatusTimeout(spt);
         spt.setTimeoutEvent(sc);
         statusTimeoutId = sc.getTimeoutId();
@@ -353,31 +1155,56 @@ public class SwimComp extends ComponentDefinition {
     }
     
     private void scheduleAck(NatedAddress address) {
-        ScheduleTimeout spt = new ScheduleTimeout(5000);
-        AckTimeout sc = new AckTimeout(spt, address);
-        spt.setTimeoutEvent(sc);
-        ackTimeoutIds.put(address,sc.getTimeoutId());
-        trigger(spt, timer);
+        deadlines.schedule(ACK_DEADLINE, address, ackTimeout * localHealth.multiplier());
     }
     
     private void cancelAck(NatedAddress address) {
-        CancelTimeout cpt = new CancelTimeout(ackTimeoutIds.get(address));
-        trigger(cpt, timer);
-        ackTimeoutIds.remove(address);
+        deadlines.cancel(ACK_DEADLINE, address);
     }
     
-    private void scheduleDeadTimeout(NatedAddress address) {
-        ScheduleTimeout spt = new ScheduleTimeout(10000);
-        DeadTimeout sc = new DeadTimeout(spt, address);
-        spt.setTimeoutEvent(sc);
-        deadTimeoutIds.put(address,sc.getTimeoutId());
-        trigger(spt, timer);
+    private void schedulePingReqTimeout(NatedAddress address) {
+        deadlines.schedule(PING_REQ_DEADLINE, address, pingReqTimeout);
+    }
+    
+    private void cancelPingReqTimeout(NatedAddress address) {
+        deadlines.cancel(PING_REQ_DEADLINE, address);
+    }
+    
+    //the nack has to reach the requester before its own ping-req deadline,
+    //both wheels round up to ticks so leave it one tick earlier
+    private void scheduleRelayTimeout(NatedAddress address, long requesterTimeout) {
+        long tick = deadlines.getTickMs();
+        long timeout = requesterTimeout > 0 ? requesterTimeout : pingReqTimeout;
+        long ticks = Math.max(1, (timeout + tick - 1) / tick - 1);
+        deadlines.schedule(RELAY_DEADLINE, address, ticks * tick);
+    }
+    
+    private void cancelRelayTimeout(NatedAddress address) {
+        deadlines.cancel(RELAY_DEADLINE, address);
+    }
+    
+    //starts at deadTimeout, there are at most size - 2 other members to confirm
+    private void scheduleDeadTimeout(NatedAddress address, int origin) {
+        int k = Math.min(config.suspicionConfirmations, membershipList.size() - 2);
+        Suspicion suspicion = new Suspicion(System.currentTimeMillis(), Math.min(deadTimeout, config.minDeadTimeout), deadTimeout, k, origin);
+        suspicions.put(address.getId(), suspicion);
+        deadlines.schedule(DEAD_DEADLINE, address, suspicion.timeout());
+    }
+    
+    //confirmer is the node that suspected, -1 when the update did not say
+    private void confirmSuspicion(NatedAddress address, int confirmer) {
+        if(confirmer < 0){
+            return;
+        }
+        Suspicion suspicion = suspicions.get(address.getId());
+        if(suspicion != null && suspicion.confirm(confirmer)){
+            deadlines.schedule(DEAD_DEADLINE, address, suspicion.remaining(System.currentTimeMillis()));
+        }
     }
     
     private void cancelDeadTimeout(NatedAddress address) {
-        CancelTimeout cpt = new CancelTimeout(deadTimeoutIds.get(address));
-        trigger(cpt, timer);
-        deadTimeoutIds.remove(address);
+        deadlines.cancel(DEAD_DEADLINE, address);
+        suspicions.remove(address.getId());
     }
     
     public static class SwimInit extends Init<SwimComp> {
@@ -385,11 +1212,17 @@ public class SwimComp extends ComponentDefinition {
         public final NatedAddress selfAddress;
         public final Set<NatedAddress> bootstrapNodes;
         public final NatedAddress aggregatorAddress;
+        public final SwimConfig config;
         
         public SwimInit(NatedAddress selfAddress, Set<NatedAddress> bootstrapNodes, NatedAddress aggregatorAddress) {
+            this(selfAddress, bootstrapNodes, aggregatorAddress, SwimConfig.defaultConfig());
+        }
+        
+        public SwimInit(NatedAddress selfAddress, Set<NatedAddress> bootstrapNodes, NatedAddress aggregatorAddress, SwimConfig config) {
             this.selfAddress = selfAddress;
             this.bootstrapNodes = bootstrapNodes;
             this.aggregatorAddress = aggregatorAddress;
+            this.config = config;
         }
     }
     
@@ -406,43 +1239,5 @@ public class SwimComp extends ComponentDefinition {
             super(request);
         }
     }
-    
-    private static class AckTimeout extends Timeout {
-        
-        private final NatedAddress address;
-        
-        public AckTimeout(ScheduleTimeout request, NatedAddress address) {
-            super(request);
-            this.address = address;
-        }
-        
-        /**
-         * @return the address
-         */
-        public NatedAddress getAddress() {
-            return address;
-        }
-    }
-    
-    private static class DeadTimeout extends Timeout {
-        
-        private final NatedAddress address;
-        
-        public DeadTimeout(ScheduleTimeout request, NatedAddress address) {
-            super(request);
-            this.address = address;
-        }
-        
-        /**
-         * @return the address
-         */
-        public NatedAddress getAddress() {
-            return address;
-        }
-    }
-    
 
-    private void printmyneigh() {
-            membershipList.printNeighbour();
-    }
 }
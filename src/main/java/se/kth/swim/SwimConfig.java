@@ -0,0 +1,251 @@
+/*
+* To change this license header, choose License Headers in Project Properties.
+* To change this template file, choose Tools | Templates
+* and open the template in the editor.
+*/
+
+package se.kth.swim;
+
+/**
+ * Protocol parameters of a swim node, all times in milliseconds.
+ * <p>
+ * In adaptive mode the configured timeouts are upper bounds for the ones
+ * derived from the measured round trip time, the dead timeout grows with
+ * log2(n) of the membership size and the probe interval never drops below
+ * rttMultiplier round trips.
+ * <p>
+ * With activeViewSize above 0 the node keeps a HyParView partial view
+ * instead of the whole membership: it probes at most activeViewSize members
+ * and remembers up to passiveViewSize more, refreshed by a shuffle every
+ * shufflePeriod.
+ *
+ * @author fabriziodemaria
+ */
+public class SwimConfig {
+
+    public static final long DEFAULT_PING_PERIOD = 1000;
+    public static final long DEFAULT_ACK_TIMEOUT = 5000;
+    public static final long DEFAULT_PING_REQ_TIMEOUT = 5000;
+    public static final int DEFAULT_PING_REQ_FANOUT = 3;
+    public static final long DEFAULT_RELAY_TIMEOUT = 5000;
+    public static final long DEFAULT_DEAD_TIMEOUT = 10000;
+    public static final long DEFAULT_STATUS_PERIOD = 10000;
+    public static final int DEFAULT_DISSEMINATION_LAMBDA = 3;
+    public static final int DEFAULT_MAX_PIGGYBACK = 10;
+    public static final int DEFAULT_SUSPICION_MULTIPLIER = 4;
+    public static final int DEFAULT_RTT_MULTIPLIER = 3;
+    public static final int DEFAULT_MAX_LOCAL_HEALTH = 8;
+    public static final long DEFAULT_MIN_DEAD_TIMEOUT = 2000;
+    public static final int DEFAULT_SUSPICION_CONFIRMATIONS = 3;
+    public static final long DEFAULT_BATCH_WINDOW = 0;
+    public static final long DEFAULT_SYNC_PERIOD = 30000;
+    public static final int DEFAULT_ACTIVE_VIEW_SIZE = 8;
+    public static final int DEFAULT_PASSIVE_VIEW_SIZE = 48;
+    public static final long DEFAULT_SHUFFLE_PERIOD = 10000;
+
+    //protocol period, also the resolution of every per-member timeout
+    public final long pingPeriod;
+    public final long ackTimeout;
+    public final long pingReqTimeout;
+    public final int pingReqFanout;
+    //a relayed request with no answer from the destination within this time is a miss for the parent
+    public final long relayTimeout;
+    public final long deadTimeout;
+    public final long statusPeriod;
+    //each update is piggybacked disseminationLambda * log2(n) times
+    public final int disseminationLambda;
+    public final int maxPiggyback;
+    public final boolean adaptive;
+    //adaptive dead timeout: suspicionMultiplier * log2(n) probe intervals
+    public final int suspicionMultiplier;
+    //adaptive ack timeout and minimum probe interval, in round trips
+    public final int rttMultiplier;
+    //upper bound of the local health score, ack timeout and probe interval
+    //are stretched by score + 1, 0 turns local health off
+    public final int maxLocalHealth;
+    //the dead timeout starts at deadTimeout and decays logarithmically down to
+    //minDeadTimeout as suspicionConfirmations distinct peers confirm it, 0 keeps it fixed
+    public final long minDeadTimeout;
+    public final int suspicionConfirmations;
+    //messages to the same node within batchWindow leave in one frame, 0 sends each one right away
+    public final long batchWindow;
+    //push-pull anti-entropy with a random member every syncPeriod, 0 turns it off
+    public final long syncPeriod;
+    //0 keeps the whole membership
+    public final int activeViewSize;
+    public final int passiveViewSize;
+    public final long shufflePeriod;
+
+    private SwimConfig(Builder builder) {
+        this.pingPeriod = builder.pingPeriod;
+        this.ackTimeout = builder.ackTimeout;
+        this.pingReqTimeout = builder.pingReqTimeout;
+        this.pingReqFanout = builder.pingReqFanout;
+        this.relayTimeout = builder.relayTimeout;
+        this.deadTimeout = builder.deadTimeout;
+        this.statusPeriod = builder.statusPeriod;
+        this.disseminationLambda = builder.disseminationLambda;
+        this.maxPiggyback = builder.maxPiggyback;
+        this.adaptive = builder.adaptive;
+        this.suspicionMultiplier = builder.suspicionMultiplier;
+        this.rttMultiplier = builder.rttMultiplier;
+        this.maxLocalHealth = builder.maxLocalHealth;
+        this.minDeadTimeout = builder.minDeadTimeout;
+        this.suspicionConfirmations = builder.suspicionConfirmations;
+        this.batchWindow = builder.batchWindow;
+        this.syncPeriod = builder.syncPeriod;
+        this.activeViewSize = builder.activeViewSize;
+        this.passiveViewSize = builder.passiveViewSize;
+        this.shufflePeriod = builder.shufflePeriod;
+    }
+
+    public boolean isPartialView() {
+        return activeViewSize > 0;
+    }
+
+    public static SwimConfig defaultConfig() {
+        return new Builder().build();
+    }
+
+    /**
+     * Default parameters in partial view mode, anti-entropy is off since
+     * there is no full view to compare.
+     */
+    public static SwimConfig partialViewConfig(int activeViewSize, int passiveViewSize) {
+        return new Builder().partialView(activeViewSize, passiveViewSize, DEFAULT_SHUFFLE_PERIOD).syncPeriod(0).build();
+    }
+
+    public static SwimConfig adaptiveConfig() {
+        return new Builder().adaptive(DEFAULT_SUSPICION_MULTIPLIER, DEFAULT_RTT_MULTIPLIER).build();
+    }
+
+    /**
+     * Starts from the defaults, every parameter left alone keeps its
+     * DEFAULT_ value.
+     */
+    public static class Builder {
+
+        private long pingPeriod = DEFAULT_PING_PERIOD;
+        private long ackTimeout = DEFAULT_ACK_TIMEOUT;
+        private long pingReqTimeout = DEFAULT_PING_REQ_TIMEOUT;
+        private int pingReqFanout = DEFAULT_PING_REQ_FANOUT;
+        private long relayTimeout = DEFAULT_RELAY_TIMEOUT;
+        private long deadTimeout = DEFAULT_DEAD_TIMEOUT;
+        private long statusPeriod = DEFAULT_STATUS_PERIOD;
+        private int disseminationLambda = DEFAULT_DISSEMINATION_LAMBDA;
+        private int maxPiggyback = DEFAULT_MAX_PIGGYBACK;
+        private boolean adaptive = false;
+        private int suspicionMultiplier = DEFAULT_SUSPICION_MULTIPLIER;
+        private int rttMultiplier = DEFAULT_RTT_MULTIPLIER;
+        private int maxLocalHealth = DEFAULT_MAX_LOCAL_HEALTH;
+        private long minDeadTimeout = DEFAULT_MIN_DEAD_TIMEOUT;
+        private int suspicionConfirmations = DEFAULT_SUSPICION_CONFIRMATIONS;
+        private long batchWindow = DEFAULT_BATCH_WINDOW;
+        private long syncPeriod = DEFAULT_SYNC_PERIOD;
+        private int activeViewSize = 0;
+        private int passiveViewSize = 0;
+        private long shufflePeriod = 0;
+
+        public Builder() {
+        }
+
+        public Builder(SwimConfig config) {
+            this.pingPeriod = config.pingPeriod;
+            this.ackTimeout = config.ackTimeout;
+            this.pingReqTimeout = config.pingReqTimeout;
+            this.pingReqFanout = config.pingReqFanout;
+            this.relayTimeout = config.relayTimeout;
+            this.deadTimeout = config.deadTimeout;
+            this.statusPeriod = config.statusPeriod;
+            this.disseminationLambda = config.disseminationLambda;
+            this.maxPiggyback = config.maxPiggyback;
+            this.adaptive = config.adaptive;
+            this.suspicionMultiplier = config.suspicionMultiplier;
+            this.rttMultiplier = config.rttMultiplier;
+            this.maxLocalHealth = config.maxLocalHealth;
+            this.minDeadTimeout = config.minDeadTimeout;
+            this.suspicionConfirmations = config.suspicionConfirmations;
+            this.batchWindow = config.batchWindow;
+            this.syncPeriod = config.syncPeriod;
+            this.activeViewSize = config.activeViewSize;
+            this.passiveViewSize = config.passiveViewSize;
+            this.shufflePeriod = config.shufflePeriod;
+        }
+
+        public Builder pingPeriod(long pingPeriod) {
+            this.pingPeriod = pingPeriod;
+            return this;
+        }
+
+        public Builder ackTimeout(long ackTimeout) {
+            this.ackTimeout = ackTimeout;
+            return this;
+        }
+
+        public Builder pingReq(long pingReqTimeout, int pingReqFanout) {
+            this.pingReqTimeout = pingReqTimeout;
+            this.pingReqFanout = pingReqFanout;
+            return this;
+        }
+
+        public Builder relayTimeout(long relayTimeout) {
+            this.relayTimeout = relayTimeout;
+            return this;
+        }
+
+        public Builder deadTimeout(long deadTimeout) {
+            this.deadTimeout = deadTimeout;
+            return this;
+        }
+
+        public Builder statusPeriod(long statusPeriod) {
+            this.statusPeriod = statusPeriod;
+            return this;
+        }
+
+        public Builder dissemination(int disseminationLambda, int maxPiggyback) {
+            this.disseminationLambda = disseminationLambda;
+            this.maxPiggyback = maxPiggyback;
+            return this;
+        }
+
+        public Builder adaptive(int suspicionMultiplier, int rttMultiplier) {
+            this.adaptive = true;
+            this.suspicionMultiplier = suspicionMultiplier;
+            this.rttMultiplier = rttMultiplier;
+            return this;
+        }
+
+        public Builder maxLocalHealth(int maxLocalHealth) {
+            this.maxLocalHealth = maxLocalHealth;
+            return this;
+        }
+
+        public Builder suspicion(long minDeadTimeout, int suspicionConfirmations) {
+            this.minDeadTimeout = minDeadTimeout;
+            this.suspicionConfirmations = suspicionConfirmations;
+            return this;
+        }
+
+        public Builder batchWindow(long batchWindow) {
+            this.batchWindow = batchWindow;
+            return this;
+        }
+
+        public Builder syncPeriod(long syncPeriod) {
+            this.syncPeriod = syncPeriod;
+            return this;
+        }
+
+        public Builder partialView(int activeViewSize, int passiveViewSize, long shufflePeriod) {
+            this.activeViewSize = activeViewSize;
+            this.passiveViewSize = passiveViewSize;
+            this.shufflePeriod = shufflePeriod;
+            return this;
+        }
+
+        public SwimConfig build() {
+            return new SwimConfig(this);
+        }
+    }
+}
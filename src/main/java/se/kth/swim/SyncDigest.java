@@ -0,0 +1,58 @@
+/*
+* To change this license header, choose License Headers in Project Properties.
+* To change this template file, choose Tools | Templates
+* and open the template in the editor.
+*/
+
+package se.kth.swim;
+
+/**
+ * Digest of a membership view for push-pull anti-entropy. Members are spread
+ * over a power of two number of buckets by a hash of their id, and each bucket
+ * holds the sum of the hashes of (id, incarnation, suspected) of its members
+ * and of (id, incarnation) of the members recently declared dead.
+ * The sum does not depend on the order, so two views agree on a bucket exactly
+ * when (up to collisions) they agree on all its members, and only the
+ * differing buckets have to be exchanged.
+ *
+ * @author fabriziodemaria
+ */
+public final class SyncDigest {
+    
+    //about this many members per bucket
+    private static final int BUCKET_SIZE = 8;
+    private static final int MAX_BUCKETS = 256;
+    
+    private SyncDigest() {
+    }
+    
+    /**
+     * @return the bucket count for a view of that many members
+     */
+    public static int buckets(int members) {
+        int wanted = Math.max(1, Math.min(MAX_BUCKETS, members / BUCKET_SIZE));
+        return Integer.highestOneBit(wanted);
+    }
+    
+    public static int bucket(int id, int buckets) {
+        return mix(id) & (buckets - 1);
+    }
+    
+    public static int hash(int id, int incarnation, boolean suspected) {
+        return mix(mix(id) + 31 * incarnation + (suspected ? 0x5bd1e995 : 0));
+    }
+    
+    public static int deadHash(int id, int incarnation) {
+        return mix(mix(id) + 31 * incarnation + 0x27d4eb2f);
+    }
+    
+    //murmur3 finalizer
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
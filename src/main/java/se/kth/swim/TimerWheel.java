@@ -0,0 +1,189 @@
+/*
+* To change this license header, choose License Headers in Project Properties.
+* To change this template file, choose Tools | Templates
+* and open the template in the editor.
+*/
+
+package se.kth.swim;
+
+import se.sics.p2ptoolbox.util.network.NatedAddress;
+
+/**
+ * Hashed timing wheel for the per-member deadlines of the protocol (ack,
+ * ping-req, dead...). It does not own a clock, the owner calls tick() once per
+ * tick period and the expired deadlines are handed to a listener. Each member
+ * has at most one deadline per kind, scheduling again replaces it. Schedule,
+ * cancel and lookup are O(1) and the deadline objects are recycled.
+ *
+ * @author fabriziodemaria
+ */
+public final class TimerWheel {
+
+    public interface Listener {
+        void expired(int kind, NatedAddress address);
+    }
+
+    private final long tickMs;
+    private final Deadline[] slots;
+    private final int mask;
+    private int cursor = 0;
+
+    //one index per kind, node id -> pending deadline
+    private final IntHashMap<Deadline>[] scheduled;
+    private Deadline free;
+
+    @SuppressWarnings("unchecked")
+    public TimerWheel(long tickMs, int wheelSize, int kinds) {
+        this.tickMs = tickMs;
+        int size = Integer.highestOneBit(Math.max(2, wheelSize) - 1) << 1;
+        this.slots = new Deadline[size];
+        this.mask = size - 1;
+        this.scheduled = new IntHashMap[kinds];
+        for(int i = 0; i < kinds; i++){
+            scheduled[i] = new IntHashMap<Deadline>();
+        }
+    }
+
+    /**
+     * Expires after delayMs rounded up to whole ticks, at least one tick.
+     */
+    public void schedule(int kind, NatedAddress address, long delayMs) {
+        int id = address.getId();
+        Deadline d = scheduled[kind].get(id);
+        if(d != null && d.slot >= 0){
+            unlink(d);
+        } else {
+            if(d != null){
+                //already expired in the running tick, drop that expiry
+                d.address = null;
+            }
+            d = obtain();
+            scheduled[kind].put(id, d);
+        }
+        long ticks = Math.max(1, (delayMs + tickMs - 1) / tickMs);
+        d.kind = kind;
+        d.id = id;
+        d.address = address;
+        d.rounds = (ticks - 1) / slots.length;
+        d.slot = (int) ((cursor + ticks) & mask);
+        link(d);
+    }
+
+    public boolean cancel(int kind, NatedAddress address) {
+        Deadline d = scheduled[kind].remove(address.getId());
+        if(d == null){
+            return false;
+        }
+        if(d.slot < 0){
+            //expired in the running tick but not handed out yet
+            d.address = null;
+            return true;
+        }
+        unlink(d);
+        recycle(d);
+        return true;
+    }
+
+    public boolean isScheduled(int kind, NatedAddress address) {
+        return scheduled[kind].containsKey(address.getId());
+    }
+
+    /**
+     * Advances the wheel by one tick. The listener may schedule or cancel
+     * deadlines while it is called, also the ones expiring in this same tick
+     * that it has not been handed yet.
+     */
+    public void tick(Listener listener) {
+        cursor = (cursor + 1) & mask;
+        //detach everything due first, the listener may touch this slot
+        Deadline expired = null;
+        Deadline d = slots[cursor];
+        while(d != null){
+            Deadline next = d.next;
+            if(d.rounds == 0){
+                unlink(d);
+                d.slot = -1;
+                d.next = expired;
+                expired = d;
+            } else {
+                d.rounds--;
+            }
+            d = next;
+        }
+        while(expired != null){
+            Deadline next = expired.next;
+            int kind = expired.kind;
+            NatedAddress address = expired.address;
+            if(address != null){
+                scheduled[kind].remove(expired.id);
+            }
+            recycle(expired);
+            if(address != null){
+                listener.expired(kind, address);
+            }
+            expired = next;
+        }
+    }
+
+    public long getTickMs() {
+        return tickMs;
+    }
+
+    /*
+
+
+    SUPPORTING CODE
+
+
+    */
+
+    private void link(Deadline d) {
+        d.prev = null;
+        d.next = slots[d.slot];
+        if(slots[d.slot] != null){
+            slots[d.slot].prev = d;
+        }
+        slots[d.slot] = d;
+    }
+
+    private void unlink(Deadline d) {
+        if(d.prev != null){
+            d.prev.next = d.next;
+        } else {
+            slots[d.slot] = d.next;
+        }
+        if(d.next != null){
+            d.next.prev = d.prev;
+        }
+        d.prev = null;
+        d.next = null;
+    }
+
+    private Deadline obtain() {
+        Deadline d = free;
+        if(d == null){
+            return new Deadline();
+        }
+        free = d.next;
+        d.next = null;
+        return d;
+    }
+
+    private void recycle(Deadline d) {
+        d.address = null;
+        d.prev = null;
+        d.next = free;
+        free = d;
+    }
+
+    private static class Deadline {
+
+        private int kind;
+        private int id;
+        private NatedAddress address;
+        private long rounds;
+        private int slot;
+        private Deadline prev;
+        private Deadline next;
+    }
+}
@@ -33,7 +33,8 @@ public class Ping {
         public Ping(){       
         }
       
+        //the list is owned by the message from here on, no copy is made
         public Ping(ArrayList<InfoPiggyback> a){        
-          infoList = new ArrayList<InfoPiggyback>(a);
+          infoList = a;
       }
 }
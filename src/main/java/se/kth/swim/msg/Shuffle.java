@@ -0,0 +1,23 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package se.kth.swim.msg;
+
+import java.util.ArrayList;
+import se.kth.swim.msg.net.InfoPiggyback;
+
+/**
+ * HyParView shuffle, a sample of the sender's views as NEWNODE gossip. The
+ * receiver answers with a sample of its passive view flagged as reply.
+ */
+public class Shuffle extends Ping {
+    
+    public final boolean reply;
+    
+    public Shuffle(ArrayList<InfoPiggyback> sample, boolean reply) {
+        super(sample);
+        this.reply = reply;
+    }
+}
@@ -0,0 +1,26 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package se.kth.swim.msg;
+
+import java.util.ArrayList;
+import se.kth.swim.msg.net.InfoPiggyback;
+
+/**
+ * One chunk of the membership snapshot a member streams to a joining node.
+ * Every chunk is a self contained piece of gossip, NEWNODE for the alive
+ * members, so chunks can be merged as they come in any order.
+ */
+public class Snapshot extends Ping {
+    
+    public final int chunk;
+    public final int chunks;
+    
+    public Snapshot(int chunk, int chunks, ArrayList<InfoPiggyback> entries) {
+        super(entries);
+        this.chunk = chunk;
+        this.chunks = chunks;
+    }
+}
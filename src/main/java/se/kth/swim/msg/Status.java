@@ -20,12 +20,61 @@
 package se.kth.swim.msg;
 
 /**
+ * Status report of a node. On the wire the numeric fields are either absolute
+ * (baseSeq == FULL) or the difference to the report baseSeq, the last one the
+ * aggregator acked. The id lists hold the node's events since that acked
+ * report, each list starting at the given index of the node's own event log.
+ * The aggregator turns both forms back into absolute reports holding only the
+ * events it did not see yet.
+ *
  * @author Alex Ormenisan <aaor@sics.se>
  */
 public class Status {
+    public static final int FULL = -1;
+    static final int[] NONE = new int[0];
+    
+    public int seq = 0;
+    public int baseSeq = FULL;
+    
     public int receivedPings;
+    public int membershipSize;
+    public int suspectedCount;
+    //members removed as dead since the node started
+    public int deadCount;
+    public int incarnation;
+    //updates still waiting in the dissemination buffer
+    public int bufferDepth;
+    //swim messages since the node started
+    public int sentMessages;
+    public int receivedMessages;
+    //ids this node started to suspect or removed as dead
+    public int[] newSuspects = NONE;
+    public int[] newDead = NONE;
+    public int suspectsFrom = 0;
+    public int deadFrom = 0;
     
     public Status(int receivedPings) {
+        this(receivedPings, 0, 0, 0, 0, 0, 0, 0);
+    }
+    
+    public Status(int receivedPings, int membershipSize, int suspectedCount, int deadCount, int incarnation,
+            int bufferDepth, int sentMessages, int receivedMessages) {
         this.receivedPings = receivedPings;
+        this.membershipSize = membershipSize;
+        this.suspectedCount = suspectedCount;
+        this.deadCount = deadCount;
+        this.incarnation = incarnation;
+        this.bufferDepth = bufferDepth;
+        this.sentMessages = sentMessages;
+        this.receivedMessages = receivedMessages;
+    }
+    
+    public int[] values() {
+        return new int[]{receivedPings, membershipSize, suspectedCount, deadCount, incarnation,
+            bufferDepth, sentMessages, receivedMessages};
+    }
+    
+    public static Status fromValues(int[] v) {
+        return new Status(v[0], v[1], v[2], v[3], v[4], v[5], v[6], v[7]);
     }
 }
@@ -0,0 +1,20 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package se.kth.swim.msg;
+
+/**
+ * Aggregator answer to a status report. With resync set the report could not
+ * be applied and the node sends a full one next.
+ */
+public class StatusAck {
+    public final int seq;
+    public final boolean resync;
+    
+    public StatusAck(int seq, boolean resync) {
+        this.seq = seq;
+        this.resync = resync;
+    }
+}
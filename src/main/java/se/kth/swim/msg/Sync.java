@@ -0,0 +1,37 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package se.kth.swim.msg;
+
+import java.util.ArrayList;
+import se.kth.swim.msg.net.InfoPiggyback;
+
+/**
+ * Push-pull anti-entropy exchange. The initiator sends only the bucket digest
+ * of its view. The peer answers with its entries of the buckets that differ
+ * and asks for the same buckets back, and the initiator answers with its own
+ * entries. Entries travel as gossip in infoList, NEWNODE for alive members.
+ */
+public class Sync extends Ping {
+    
+    public final int buckets;
+    //one hash per bucket, null in the entry messages
+    public final int[] digest;
+    //buckets the receiver should send back, null if no answer is expected
+    public final int[] wanted;
+    
+    public Sync(int buckets, int[] digest) {
+        this.buckets = buckets;
+        this.digest = digest;
+        this.wanted = null;
+    }
+    
+    public Sync(int buckets, ArrayList<InfoPiggyback> entries, int[] wanted) {
+        super(entries);
+        this.buckets = buckets;
+        this.digest = null;
+        this.wanted = wanted;
+    }
+}
@@ -19,10 +19,11 @@ public class InfoPiggyback implements Serializable {
     private InfoType infoType;
     private NatedAddress infoTarget;
     private Integer incarnationValue;
+    //id of the node that suspected the target, -1 if unknown or not a suspicion
+    private int suspecter = -1;
     
     public InfoPiggyback (InfoType t, NatedAddress n){
-        this.infoType = t;
-        this.infoTarget = n;
+        this(t, n, 0);
     }
     
     public InfoPiggyback(InfoType t, NatedAddress n, Integer i) {
@@ -31,6 +32,11 @@ public class InfoPiggyback implements Serializable {
         this.incarnationValue = i;
     }
     
+    public InfoPiggyback(InfoType t, NatedAddress n, Integer i, int suspecter) {
+        this(t, n, i);
+        this.suspecter = suspecter;
+    }
+    
     /**
      * @return the infoType
      */
@@ -73,6 +79,33 @@ public class InfoPiggyback implements Serializable {
         this.incarnationValue = incarnationValue;
     }
     
+    /**
+     * @return the id of the node that suspected the target, -1 if unknown
+     */
+    public int getSuspecter() {
+        return suspecter;
+    }
+    
+    /**
+     * SWIM precedence between two pieces of information about the same node:
+     * DEAD beats everything, a higher incarnation beats a lower one and with
+     * equal incarnations SUSPECTED beats ALIVE (NEWNODE counts as ALIVE).
+     * 
+     * @return true if (type, incarnation) is newer than (oldType, oldIncarnation)
+     */
+    public static boolean overrides(InfoType type, int incarnation, InfoType oldType, int oldIncarnation) {
+        if (oldType == InfoType.DEADNODE) {
+            return false;
+        }
+        if (type == InfoType.DEADNODE) {
+            return true;
+        }
+        if (type == InfoType.SUSPECTEDNODE && oldType != InfoType.SUSPECTEDNODE) {
+            return incarnation >= oldIncarnation;
+        }
+        return incarnation > oldIncarnation;
+    }
+    
     
     
 }
@@ -0,0 +1,32 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package se.kth.swim.msg.net;
+
+import java.util.ArrayList;
+import se.sics.kompics.network.Header;
+import se.sics.p2ptoolbox.util.network.NatedAddress;
+
+/**
+ * Envelope for several messages with the same source and destination. The
+ * inner messages keep their own headers and are delivered one by one on the
+ * receiving side.
+ */
+public class NetBatch extends NetMsg<ArrayList<NetMsg<?>>> {
+
+    public NetBatch(NatedAddress src, NatedAddress dst, ArrayList<NetMsg<?>> messages) {
+        super(src, dst, messages);
+    }
+
+    private NetBatch(Header<NatedAddress> header, ArrayList<NetMsg<?>> content) {
+        super(header, content);
+    }
+
+    @Override
+    public NetMsg copyMessage(Header<NatedAddress> newHeader) {
+        return new NetBatch(newHeader, getContent());
+    }
+
+}
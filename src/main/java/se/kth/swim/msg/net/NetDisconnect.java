@@ -0,0 +1,32 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package se.kth.swim.msg.net;
+
+import java.util.ArrayList;
+import se.kth.swim.msg.Ping;
+import se.sics.kompics.network.Header;
+import se.sics.p2ptoolbox.util.network.NatedAddress;
+
+/**
+ * Tells a node it was dropped from the sender's active view, in partial view
+ * mode. It is not a failure, the receiver moves the sender to its passive view.
+ */
+public class NetDisconnect extends NetMsg<Ping> {
+
+    public NetDisconnect(NatedAddress src, NatedAddress dst, ArrayList<InfoPiggyback> updates) {
+        super(src, dst, new Ping(updates));
+    }
+
+    private NetDisconnect(Header<NatedAddress> header, Ping content) {
+        super(header, content);
+    }
+
+    @Override
+    public NetMsg copyMessage(Header<NatedAddress> newHeader) {
+        return new NetDisconnect(newHeader, getContent());
+    }
+
+}
@@ -0,0 +1,31 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package se.kth.swim.msg.net;
+
+import java.util.ArrayList;
+import se.kth.swim.msg.Ping;
+import se.sics.kompics.network.Header;
+import se.sics.p2ptoolbox.util.network.NatedAddress;
+
+/**
+ * Asks a member for a membership snapshot, answered with NetJoinChunks.
+ */
+public class NetJoin extends NetMsg<Ping> {
+
+    public NetJoin(NatedAddress src, NatedAddress dst, ArrayList<InfoPiggyback> updates) {
+        super(src, dst, new Ping(updates));
+    }
+
+    private NetJoin(Header<NatedAddress> header, Ping content) {
+        super(header, content);
+    }
+
+    @Override
+    public NetMsg copyMessage(Header<NatedAddress> newHeader) {
+        return new NetJoin(newHeader, getContent());
+    }
+
+}
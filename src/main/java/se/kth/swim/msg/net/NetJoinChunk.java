@@ -0,0 +1,27 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package se.kth.swim.msg.net;
+
+import se.kth.swim.msg.Snapshot;
+import se.sics.kompics.network.Header;
+import se.sics.p2ptoolbox.util.network.NatedAddress;
+
+public class NetJoinChunk extends NetMsg<Snapshot> {
+
+    public NetJoinChunk(NatedAddress src, NatedAddress dst, Snapshot chunk) {
+        super(src, dst, chunk);
+    }
+
+    private NetJoinChunk(Header<NatedAddress> header, Snapshot content) {
+        super(header, content);
+    }
+
+    @Override
+    public NetMsg copyMessage(Header<NatedAddress> newHeader) {
+        return new NetJoinChunk(newHeader, getContent());
+    }
+
+}
@@ -0,0 +1,543 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package se.kth.swim.msg.net;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import se.kth.swim.IntIntMap;
+import se.kth.swim.msg.Ping;
+import se.kth.swim.msg.Shuffle;
+import se.kth.swim.msg.Snapshot;
+import se.kth.swim.msg.Status;
+import se.kth.swim.msg.StatusAck;
+import se.kth.swim.msg.Sync;
+import se.sics.kompics.network.Header;
+import se.sics.p2ptoolbox.util.network.NatType;
+import se.sics.p2ptoolbox.util.network.NatedAddress;
+import se.sics.p2ptoolbox.util.network.impl.BasicAddress;
+import se.sics.p2ptoolbox.util.network.impl.BasicNatedAddress;
+
+/**
+ * Binary wire format for the swim messages.
+ * <p>
+ * Every address used by a message (source, destination, gossip targets and
+ * their NAT parents) is written once in a table at the start of the message,
+ * parents before their children, and referenced by index afterwards. A gossip
+ * entry is a varint holding the table index and the 2-bit info type followed by
+ * the zigzag varint delta of its incarnation against the previous entry.
+ * <p>
+ * Only messages with their original source/destination header are encoded,
+ * relaying is left to the NAT layer. An instance keeps scratch state and must
+ * be used by one thread at a time, the buffer pool can be shared.
+ * <p>
+ * The simulator hands messages over as objects, so nothing in the simulated
+ * run goes through this codec: it is the wire format for a real transport and
+ * is exercised by the tests and the codec benchmark.
+ */
+public final class NetMsgCodec {
+
+    private static final byte PING = 1;
+    private static final byte PONG = 2;
+    private static final byte PING_REQ = 3;
+    private static final byte PING_REQ_ACK = 4;
+    private static final byte STATUS = 5;
+    private static final byte STATUS_ACK = 6;
+    private static final byte PING_REQ_NACK = 7;
+    private static final byte BATCH = 8;
+    private static final byte SYNC = 9;
+    private static final byte JOIN = 10;
+    private static final byte JOIN_CHUNK = 11;
+    private static final byte SHUFFLE = 12;
+    private static final byte DISCONNECT = 13;
+
+    //bound of the buffer growth in encode
+    private static final int MAX_MESSAGE_SIZE = 64 * 1024 * 1024;
+
+    private static final InfoType[] INFO_TYPES = InfoType.values();
+    private static final NatType[] NAT_TYPES = NatType.values();
+
+    private final ByteBufferPool pool;
+
+    //address table of the message being encoded or decoded
+    private NatedAddress[] table = new NatedAddress[32];
+    private int tableSize;
+    //address id -> index of its first address in the table, encoding only
+    private final IntIntMap tableIndex = new IntIntMap(32);
+
+    public NetMsgCodec(ByteBufferPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Encodes the message into a buffer taken from the pool, ready to be read.
+     * A message too large for it (a big sync, join chunk or batch) is encoded
+     * again into a buffer of twice the size, until it fits. The caller gives
+     * the buffer back with {@link #release(ByteBuffer)}, the pool keeps only
+     * buffers of its own size.
+     */
+    public ByteBuffer encode(NetMsg<?> msg) {
+        ByteBuffer buf = pool.acquire();
+        while (true) {
+            try {
+                encode(msg, buf);
+                buf.flip();
+                return buf;
+            } catch (BufferOverflowException ex) {
+                if (buf.capacity() > MAX_MESSAGE_SIZE / 2) {
+                    throw new IllegalArgumentException("message larger than " + MAX_MESSAGE_SIZE + " bytes");
+                }
+                int capacity = 2 * buf.capacity();
+                pool.release(buf);
+                buf = ByteBuffer.allocate(capacity);
+            }
+        }
+    }
+
+    public void release(ByteBuffer buf) {
+        pool.release(buf);
+    }
+
+    /**
+     * @throws BufferOverflowException if the message does not fit in out
+     */
+    public void encode(NetMsg<?> msg, ByteBuffer out) {
+        //a batch is its count followed by the inner messages, their headers stand for its own
+        if (msg instanceof NetBatch) {
+            ArrayList<NetMsg<?>> batch = ((NetBatch) msg).getContent();
+            if (batch.isEmpty()) {
+                throw new IllegalArgumentException("empty batch");
+            }
+            out.put(BATCH);
+            writeVarint(out, batch.size());
+            for (NetMsg<?> inner : batch) {
+                encode(inner, out);
+            }
+            return;
+        }
+        Header<NatedAddress> header = msg.getHeader();
+        tableSize = 0;
+        tableIndex.clear();
+        addAddress(header.getSource());
+        addAddress(header.getDestination());
+
+        byte type;
+        NatedAddress extra = null;
+        Object content = msg.getContent();
+        if (msg instanceof NetPing) {
+            type = PING;
+        } else if (msg instanceof NetPong) {
+            type = PONG;
+        } else if (msg instanceof NetPingReq) {
+            type = PING_REQ;
+            extra = ((NetPingReq) msg).getToPing();
+        } else if (msg instanceof NetPingReqAck) {
+            type = PING_REQ_ACK;
+            extra = ((NetPingReqAck) msg).getAckedNode();
+        } else if (msg instanceof NetPingReqNack) {
+            type = PING_REQ_NACK;
+            extra = ((NetPingReqNack) msg).getNackedNode();
+        } else if (msg instanceof NetStatus) {
+            type = STATUS;
+        } else if (msg instanceof NetStatusAck) {
+            type = STATUS_ACK;
+        } else if (msg instanceof NetSync) {
+            type = SYNC;
+        } else if (msg instanceof NetJoin) {
+            type = JOIN;
+        } else if (msg instanceof NetJoinChunk) {
+            type = JOIN_CHUNK;
+        } else if (msg instanceof NetShuffle) {
+            type = SHUFFLE;
+        } else if (msg instanceof NetDisconnect) {
+            type = DISCONNECT;
+        } else {
+            throw new IllegalArgumentException("no encoding for " + msg.getClass());
+        }
+        if (extra != null) {
+            addAddress(extra);
+        }
+        if (type != STATUS && type != STATUS_ACK && ((Ping) content).infoList != null) {
+            for (InfoPiggyback ipb : ((Ping) content).infoList) {
+                addAddress(ipb.getInfoTarget());
+            }
+        }
+
+        out.put(type);
+        writeTable(out);
+        writeVarint(out, indexOf(header.getSource()));
+        writeVarint(out, indexOf(header.getDestination()));
+        if (type == PING_REQ || type == PING_REQ_ACK || type == PING_REQ_NACK) {
+            writeVarint(out, indexOf(extra));
+        }
+        if (type == PING_REQ) {
+            writeVarint(out, (int) Math.min(Integer.MAX_VALUE, ((NetPingReq) msg).getTimeout()));
+        }
+        if (type == STATUS) {
+            writeStatus(out, (Status) content);
+        } else if (type == STATUS_ACK) {
+            writeVarint(out, ((StatusAck) content).seq);
+            out.put((byte) (((StatusAck) content).resync ? 1 : 0));
+        } else if (type == SYNC) {
+            writeSync(out, (Sync) content);
+        } else if (type == JOIN_CHUNK) {
+            writeVarint(out, ((Snapshot) content).chunk);
+            writeVarint(out, ((Snapshot) content).chunks);
+            writeInfoList(out, ((Snapshot) content).infoList);
+        } else if (type == SHUFFLE) {
+            out.put((byte) (((Shuffle) content).reply ? 1 : 0));
+            writeInfoList(out, ((Shuffle) content).infoList);
+        } else {
+            writeInfoList(out, ((Ping) content).infoList);
+        }
+        Arrays.fill(table, 0, tableSize, null);
+    }
+
+    public NetMsg<?> decode(ByteBuffer in) {
+        if (in.get(in.position()) == BATCH) {
+            in.get();
+            int count = readVarint(in);
+            if (count <= 0) {
+                throw new IllegalArgumentException("empty batch");
+            }
+            ArrayList<NetMsg<?>> batch = new ArrayList<NetMsg<?>>(count);
+            for (int i = 0; i < count; i++) {
+                batch.add(decode(in));
+            }
+            NetMsg<?> first = batch.get(0);
+            return new NetBatch(first.getHeader().getSource(), first.getHeader().getDestination(), batch);
+        }
+        byte type = in.get();
+        readTable(in);
+        NatedAddress src = table[readVarint(in)];
+        NatedAddress dst = table[readVarint(in)];
+        NetMsg<?> msg;
+        switch (type) {
+            case PING:
+                msg = new NetPing(src, dst, readInfoList(in));
+                break;
+            case PONG:
+                msg = new NetPong(src, dst, readInfoList(in));
+                break;
+            case PING_REQ: {
+                NatedAddress toPing = table[readVarint(in)];
+                long timeout = readVarint(in);
+                msg = new NetPingReq(src, dst, toPing, readInfoList(in), timeout);
+                break;
+            }
+            case PING_REQ_ACK: {
+                NatedAddress acked = table[readVarint(in)];
+                msg = new NetPingReqAck(src, dst, acked, readInfoList(in));
+                break;
+            }
+            case PING_REQ_NACK: {
+                NatedAddress nacked = table[readVarint(in)];
+                msg = new NetPingReqNack(src, dst, nacked, readInfoList(in));
+                break;
+            }
+            case STATUS:
+                msg = new NetStatus(src, dst, readStatus(in));
+                break;
+            case STATUS_ACK: {
+                int seq = readVarint(in);
+                msg = new NetStatusAck(src, dst, new StatusAck(seq, in.get() != 0));
+                break;
+            }
+            case SYNC:
+                msg = new NetSync(src, dst, readSync(in));
+                break;
+            case JOIN:
+                msg = new NetJoin(src, dst, readInfoList(in));
+                break;
+            case JOIN_CHUNK: {
+                int chunk = readVarint(in);
+                int chunks = readVarint(in);
+                msg = new NetJoinChunk(src, dst, new Snapshot(chunk, chunks, readInfoList(in)));
+                break;
+            }
+            case SHUFFLE: {
+                boolean reply = in.get() != 0;
+                msg = new NetShuffle(src, dst, new Shuffle(readInfoList(in), reply));
+                break;
+            }
+            case DISCONNECT:
+                msg = new NetDisconnect(src, dst, readInfoList(in));
+                break;
+            default:
+                throw new IllegalArgumentException("unknown message type " + type);
+        }
+        Arrays.fill(table, 0, tableSize, null);
+        return msg;
+    }
+
+    /*
+
+
+    SUPPORTING CODE
+
+
+    */
+
+    //parents go in first so the decoder can build them before their children
+    private void addAddress(NatedAddress address) {
+        if (indexOf(address) >= 0) {
+            return;
+        }
+        if (!address.isOpen()) {
+            for (NatedAddress parent : address.getParents()) {
+                addAddress(parent);
+            }
+        }
+        if (tableSize == table.length) {
+            table = Arrays.copyOf(table, table.length * 2);
+        }
+        if (!tableIndex.containsKey(address.getId())) {
+            tableIndex.put(address.getId(), tableSize);
+        }
+        table[tableSize++] = address;
+    }
+
+    //by id, a scan only when the message carries two versions of the same node
+    private int indexOf(NatedAddress address) {
+        int i = tableIndex.get(address.getId());
+        if (i < 0) {
+            return -1;
+        }
+        if (table[i] == address || table[i].equals(address)) {
+            return i;
+        }
+        for (i = i + 1; i < tableSize; i++) {
+            if (table[i].equals(address)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void writeTable(ByteBuffer out) {
+        writeVarint(out, tableSize);
+        for (int i = 0; i < tableSize; i++) {
+            NatedAddress address = table[i];
+            writeVarint(out, zigzag(address.getId()));
+            byte[] ip = address.getIp().getAddress();
+            out.put((byte) ip.length);
+            out.put(ip);
+            writeVarint(out, address.getPort());
+            out.put((byte) address.getNatType().ordinal());
+            if (address.isOpen()) {
+                writeVarint(out, 0);
+            } else {
+                writeVarint(out, address.getParents().size());
+                for (NatedAddress parent : address.getParents()) {
+                    writeVarint(out, indexOf(parent));
+                }
+            }
+        }
+    }
+
+    private void readTable(ByteBuffer in) {
+        tableSize = readVarint(in);
+        if (tableSize > table.length) {
+            table = new NatedAddress[Integer.highestOneBit(tableSize) << 1];
+        }
+        for (int i = 0; i < tableSize; i++) {
+            int id = unzigzag(readVarint(in));
+            byte[] ip = new byte[in.get() & 0xff];
+            in.get(ip);
+            int port = readVarint(in);
+            NatType natType = NAT_TYPES[in.get()];
+            int parentCount = readVarint(in);
+            BasicAddress base;
+            try {
+                base = new BasicAddress(InetAddress.getByAddress(ip), port, id);
+            } catch (UnknownHostException ex) {
+                throw new IllegalArgumentException("bad address length " + ip.length, ex);
+            }
+            if (natType == NatType.OPEN) {
+                table[i] = new BasicNatedAddress(base);
+            } else {
+                Set<NatedAddress> parents = new HashSet<NatedAddress>();
+                for (int p = 0; p < parentCount; p++) {
+                    parents.add(table[readVarint(in)]);
+                }
+                table[i] = new BasicNatedAddress(base, natType, parents);
+            }
+        }
+    }
+
+    //count + 1, so that 0 stands for a missing list
+    private void writeInfoList(ByteBuffer out, ArrayList<InfoPiggyback> infoList) {
+        if (infoList == null) {
+            writeVarint(out, 0);
+            return;
+        }
+        writeVarint(out, infoList.size() + 1);
+        int prevIncarnation = 0;
+        for (InfoPiggyback ipb : infoList) {
+            writeVarint(out, (indexOf(ipb.getInfoTarget()) << 2) | ipb.getInfoType().ordinal());
+            int incarnation = ipb.getIncarnationValue();
+            writeVarint(out, zigzag(incarnation - prevIncarnation));
+            prevIncarnation = incarnation;
+            //suspicions carry who made them, shifted so unknown (-1) is 0
+            if (ipb.getInfoType() == InfoType.SUSPECTEDNODE) {
+                writeVarint(out, ipb.getSuspecter() + 1);
+            }
+        }
+    }
+
+    private ArrayList<InfoPiggyback> readInfoList(ByteBuffer in) {
+        int size = readVarint(in) - 1;
+        if (size < 0) {
+            return null;
+        }
+        ArrayList<InfoPiggyback> infoList = new ArrayList<InfoPiggyback>(size);
+        int incarnation = 0;
+        for (int i = 0; i < size; i++) {
+            int head = readVarint(in);
+            incarnation += unzigzag(readVarint(in));
+            InfoType type = INFO_TYPES[head & 3];
+            if (type == InfoType.SUSPECTEDNODE) {
+                infoList.add(new InfoPiggyback(type, table[head >>> 2], incarnation, readVarint(in) - 1));
+            } else {
+                infoList.add(new InfoPiggyback(type, table[head >>> 2], incarnation));
+            }
+        }
+        return infoList;
+    }
+
+    //a bit mask of the non zero values followed by those, zero is the common delta
+    private void writeStatus(ByteBuffer out, Status status) {
+        writeVarint(out, status.seq);
+        writeVarint(out, zigzag(status.baseSeq));
+        int[] values = status.values();
+        int mask = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != 0) {
+                mask |= 1 << i;
+            }
+        }
+        writeVarint(out, mask);
+        for (int value : values) {
+            if (value != 0) {
+                writeVarint(out, zigzag(value));
+            }
+        }
+        writeVarint(out, status.suspectsFrom);
+        writeIds(out, status.newSuspects);
+        writeVarint(out, status.deadFrom);
+        writeIds(out, status.newDead);
+    }
+
+    private Status readStatus(ByteBuffer in) {
+        int seq = readVarint(in);
+        int baseSeq = unzigzag(readVarint(in));
+        int mask = readVarint(in);
+        int[] values = new Status(0).values();
+        for (int i = 0; i < values.length; i++) {
+            if ((mask & (1 << i)) != 0) {
+                values[i] = unzigzag(readVarint(in));
+            }
+        }
+        Status status = Status.fromValues(values);
+        status.seq = seq;
+        status.baseSeq = baseSeq;
+        status.suspectsFrom = readVarint(in);
+        status.newSuspects = readIds(in);
+        status.deadFrom = readVarint(in);
+        status.newDead = readIds(in);
+        return status;
+    }
+
+    //bucket count, then either the raw digest or the wanted buckets and the entries
+    private void writeSync(ByteBuffer out, Sync sync) {
+        writeVarint(out, sync.buckets);
+        if (sync.digest != null) {
+            out.put((byte) 1);
+            for (int hash : sync.digest) {
+                out.putInt(hash);
+            }
+            return;
+        }
+        out.put((byte) 0);
+        if (sync.wanted == null) {
+            writeVarint(out, 0);
+        } else {
+            writeVarint(out, sync.wanted.length + 1);
+            for (int bucket : sync.wanted) {
+                writeVarint(out, bucket);
+            }
+        }
+        writeInfoList(out, sync.infoList);
+    }
+
+    private Sync readSync(ByteBuffer in) {
+        int buckets = readVarint(in);
+        if (in.get() != 0) {
+            int[] digest = new int[buckets];
+            for (int i = 0; i < buckets; i++) {
+                digest[i] = in.getInt();
+            }
+            return new Sync(buckets, digest);
+        }
+        int[] wanted = null;
+        int count = readVarint(in) - 1;
+        if (count >= 0) {
+            wanted = new int[count];
+            for (int i = 0; i < count; i++) {
+                wanted[i] = readVarint(in);
+            }
+        }
+        return new Sync(buckets, readInfoList(in), wanted);
+    }
+
+    private void writeIds(ByteBuffer out, int[] ids) {
+        writeVarint(out, ids.length);
+        for (int id : ids) {
+            writeVarint(out, zigzag(id));
+        }
+    }
+
+    private int[] readIds(ByteBuffer in) {
+        int[] ids = new int[readVarint(in)];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = unzigzag(readVarint(in));
+        }
+        return ids;
+    }
+
+    static void writeVarint(ByteBuffer out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    static int readVarint(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("malformed varint");
+    }
+
+    static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -18,6 +18,7 @@
  */
 package se.kth.swim.msg.net;
 
+import java.util.ArrayList;
 import se.kth.swim.msg.Ping;
 import se.sics.kompics.network.Header;
 import se.sics.p2ptoolbox.util.network.NatedAddress;
@@ -31,6 +32,10 @@ public class NetPing extends NetMsg<Ping> {
         super(src, dst, new Ping());
     }
 
+    public NetPing(NatedAddress src, NatedAddress dst, ArrayList<InfoPiggyback> updates) {
+        super(src, dst, new Ping(updates));
+    }
+
     private NetPing(Header<NatedAddress> header, Ping content) {
         super(header, content);
     }
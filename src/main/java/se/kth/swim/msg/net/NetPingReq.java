@@ -5,6 +5,7 @@
  */
 package se.kth.swim.msg.net;
 
+import java.util.ArrayList;
 import se.kth.swim.msg.Ping;
 import se.sics.kompics.network.Header;
 import se.sics.p2ptoolbox.util.network.NatedAddress;
@@ -12,23 +13,42 @@ import se.sics.p2ptoolbox.util.network.NatedAddress;
 public class NetPingReq extends NetMsg<Ping> {
     
     private NatedAddress neighbourToPing;
+    //how long the requester waits for our answer, 0 if it did not say
+    private long timeout;
 
     public NetPingReq(NatedAddress src, NatedAddress dst, NatedAddress toPing) {
         super(src, dst, new Ping());
         neighbourToPing=toPing;
     }
+    
+    public NetPingReq(NatedAddress src, NatedAddress dst, NatedAddress toPing, ArrayList<InfoPiggyback> updates) {
+        super(src, dst, new Ping(updates));
+        neighbourToPing=toPing;
+    }
 
-    private NetPingReq(Header<NatedAddress> header, Ping content) {
+    public NetPingReq(NatedAddress src, NatedAddress dst, NatedAddress toPing, ArrayList<InfoPiggyback> updates, long timeout) {
+        super(src, dst, new Ping(updates));
+        neighbourToPing=toPing;
+        this.timeout=timeout;
+    }
+
+    private NetPingReq(Header<NatedAddress> header, Ping content, NatedAddress toPing, long timeout) {
         super(header, content);
+        neighbourToPing=toPing;
+        this.timeout=timeout;
     }
 
     @Override
     public NetMsg copyMessage(Header<NatedAddress> newHeader) {
-        return new NetPingReq(newHeader, getContent());
+        return new NetPingReq(newHeader, getContent(), neighbourToPing, timeout);
     }
     
     public NatedAddress getToPing(){
         return neighbourToPing;
     }
     
+    public long getTimeout(){
+        return timeout;
+    }
+    
 }
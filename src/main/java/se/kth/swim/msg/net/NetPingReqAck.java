@@ -0,0 +1,39 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package se.kth.swim.msg.net;
+
+import java.util.ArrayList;
+import se.kth.swim.msg.Ping;
+import se.sics.kompics.network.Header;
+import se.sics.p2ptoolbox.util.network.NatedAddress;
+
+/**
+ * Sent by a ping-req proxy back to the requester once the probed node answered.
+ */
+public class NetPingReqAck extends NetMsg<Ping> {
+    
+    private final NatedAddress ackedNode;
+
+    public NetPingReqAck(NatedAddress src, NatedAddress dst, NatedAddress acked, ArrayList<InfoPiggyback> updates) {
+        super(src, dst, new Ping(updates));
+        ackedNode=acked;
+    }
+
+    private NetPingReqAck(Header<NatedAddress> header, Ping content, NatedAddress acked) {
+        super(header, content);
+        ackedNode=acked;
+    }
+
+    @Override
+    public NetMsg copyMessage(Header<NatedAddress> newHeader) {
+        return new NetPingReqAck(newHeader, getContent(), ackedNode);
+    }
+    
+    public NatedAddress getAckedNode(){
+        return ackedNode;
+    }
+    
+}
@@ -0,0 +1,40 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package se.kth.swim.msg.net;
+
+import java.util.ArrayList;
+import se.kth.swim.msg.Ping;
+import se.sics.kompics.network.Header;
+import se.sics.p2ptoolbox.util.network.NatedAddress;
+
+/**
+ * Sent by a ping-req proxy back to the requester when the probed node did not
+ * answer in time. It tells the requester that the proxy itself is reachable.
+ */
+public class NetPingReqNack extends NetMsg<Ping> {
+    
+    private final NatedAddress nackedNode;
+
+    public NetPingReqNack(NatedAddress src, NatedAddress dst, NatedAddress nacked, ArrayList<InfoPiggyback> updates) {
+        super(src, dst, new Ping(updates));
+        nackedNode=nacked;
+    }
+
+    private NetPingReqNack(Header<NatedAddress> header, Ping content, NatedAddress nacked) {
+        super(header, content);
+        nackedNode=nacked;
+    }
+
+    @Override
+    public NetMsg copyMessage(Header<NatedAddress> newHeader) {
+        return new NetPingReqNack(newHeader, getContent(), nackedNode);
+    }
+    
+    public NatedAddress getNackedNode(){
+        return nackedNode;
+    }
+    
+}
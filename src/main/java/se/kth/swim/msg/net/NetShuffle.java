@@ -0,0 +1,27 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package se.kth.swim.msg.net;
+
+import se.kth.swim.msg.Shuffle;
+import se.sics.kompics.network.Header;
+import se.sics.p2ptoolbox.util.network.NatedAddress;
+
+public class NetShuffle extends NetMsg<Shuffle> {
+
+    public NetShuffle(NatedAddress src, NatedAddress dst, Shuffle shuffle) {
+        super(src, dst, shuffle);
+    }
+
+    private NetShuffle(Header<NatedAddress> header, Shuffle content) {
+        super(header, content);
+    }
+
+    @Override
+    public NetMsg copyMessage(Header<NatedAddress> newHeader) {
+        return new NetShuffle(newHeader, getContent());
+    }
+
+}
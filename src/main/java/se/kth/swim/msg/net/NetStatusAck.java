@@ -0,0 +1,27 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package se.kth.swim.msg.net;
+
+import se.kth.swim.msg.StatusAck;
+import se.sics.kompics.network.Header;
+import se.sics.p2ptoolbox.util.network.NatedAddress;
+
+public class NetStatusAck extends NetMsg<StatusAck> {
+
+    public NetStatusAck(NatedAddress src, NatedAddress dst, StatusAck ack) {
+        super(src, dst, ack);
+    }
+
+    private NetStatusAck(Header<NatedAddress> header, StatusAck content) {
+        super(header, content);
+    }
+
+    @Override
+    public NetMsg copyMessage(Header<NatedAddress> newHeader) {
+        return new NetStatusAck(newHeader, getContent());
+    }
+
+}
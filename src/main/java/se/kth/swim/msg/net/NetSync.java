@@ -0,0 +1,27 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package se.kth.swim.msg.net;
+
+import se.kth.swim.msg.Sync;
+import se.sics.kompics.network.Header;
+import se.sics.p2ptoolbox.util.network.NatedAddress;
+
+public class NetSync extends NetMsg<Sync> {
+
+    public NetSync(NatedAddress src, NatedAddress dst, Sync sync) {
+        super(src, dst, sync);
+    }
+
+    private NetSync(Header<NatedAddress> header, Sync content) {
+        super(header, content);
+    }
+
+    @Override
+    public NetMsg copyMessage(Header<NatedAddress> newHeader) {
+        return new NetSync(newHeader, getContent());
+    }
+
+}
@@ -21,6 +21,7 @@ package se.kth.swim.simulation;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import org.junit.Assert;
+import se.kth.swim.trace.TraceRing;
 import se.sics.kompics.Kompics;
 import se.sics.kompics.simulation.SimulatorScheduler;
 import se.sics.p2ptoolbox.simulator.run.LauncherComp;
@@ -41,8 +42,9 @@ public class SwimMain {
          * If you create your own Random() they should use a seed based on the parents seed.
          * It can be the same seed or can be customized, eg: newSeed = a * oldSeed + b
          * When testing you code, you might want to run the scenario with different seeds.
+         * Without -Dswim.scenario.* properties this is the simpleBoot scenario.
          */
-        LauncherComp.scenario = SwimScenario.simpleBoot(1234L);
+        LauncherComp.scenario = new SwimScenario.Builder().fromSystemProperties().build(1234L);
         //
         try {
             LauncherComp.simulatorClientAddress = new BasicNatedAddress(new BasicAddress(InetAddress.getByName("127.0.0.1"), 30000, -1));
@@ -57,6 +59,7 @@ public class SwimMain {
         } catch (InterruptedException ex) {
             throw new RuntimeException(ex.getMessage());
         }
+        TraceRing.closeIfOpen();
 
         Assert.assertEquals(null, SwimSimulationResult.failureCause);
     }
@@ -20,14 +20,15 @@ package se.kth.swim.simulation;
 
 import java.net.InetAddress;
 import java.net.UnknownHostException;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashSet;
-import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 import org.javatuples.Pair;
 import se.kth.swim.AggregatorComp;
 import se.kth.swim.HostComp;
-import se.sics.kompics.network.Address;
+import se.kth.swim.SwimConfig;
 import se.sics.p2ptoolbox.simulator.cmd.OperationCmd;
 import se.sics.p2ptoolbox.simulator.cmd.impl.ChangeNetworkModelCmd;
 import se.sics.p2ptoolbox.simulator.cmd.impl.SimulationResult;
@@ -51,8 +52,6 @@ import se.sics.p2ptoolbox.util.network.impl.BasicNatedAddress;
 
 public class SwimScenario {
 
-    
-    private static long seed;
     private static InetAddress localHost;
 
     static {
@@ -63,115 +62,106 @@ public class SwimScenario {
         }
     }
 
-    //Make sure that your dead link set reflect the nodes in your system
-    private static final Map<Integer, Set<Pair<Integer, Integer>>> deadLinksSets = new HashMap<Integer, Set<Pair<Integer, Integer>>>();
-
-    static {
-        Set<Pair<Integer, Integer>> deadLinks;
-
-        deadLinks = new HashSet<Pair<Integer, Integer>>();
-        deadLinks.add(Pair.with(10, 12));
-        deadLinks.add(Pair.with(12, 10));
-        deadLinksSets.put(1, deadLinks);
-
-        deadLinks = new HashSet<Pair<Integer, Integer>>();
-        deadLinks.add(Pair.with(10, 12));
-        deadLinks.add(Pair.with(12, 10));
-        deadLinks.add(Pair.with(13, 10));
-        deadLinksSets.put(2, deadLinks);
+    public enum NetworkType {
+        UNIFORM, DEAD_LINKS, DISCONNECTED_NODES
     }
 
-    //Make sure disconnected nodes reflect your nodes in the system
-    private static final Map<Integer, Set<Integer>> disconnectedNodesSets = new HashMap<Integer, Set<Integer>>();
+    /**
+     * @param statusPeriod status period of the nodes, the aggregator samples
+     * its metrics at the same rate
+     */
+    static Operation1<StartAggregatorCmd, Integer> startAggregatorOp(final long statusPeriod) {
+        return new Operation1<StartAggregatorCmd, Integer>() {
+
+            @Override
+            public StartAggregatorCmd generate(final Integer nodeId) {
+                return new StartAggregatorCmd<AggregatorComp, NatedAddress>() {
+                    private NatedAddress aggregatorAddress;
+
+                    @Override
+                    public Class getNodeComponentDefinition() {
+                        return AggregatorComp.class;
+                    }
 
-    static {
-        Set<Integer> disconnectedNodes;
+                    @Override
+                    public AggregatorComp.AggregatorInit getNodeComponentInit() {
+                        aggregatorAddress = new BasicNatedAddress(new BasicAddress(localHost, 23456, nodeId));
+                        return new AggregatorComp.AggregatorInit(aggregatorAddress, statusPeriod,
+                                System.getProperty("swim.metrics", "swim-metrics"));
+                    }
 
-        disconnectedNodes = new HashSet<Integer>();
-        disconnectedNodes.add(10);
-        disconnectedNodesSets.put(1, disconnectedNodes);
+                    @Override
+                    public NatedAddress getAddress() {
+                        return aggregatorAddress;
+                    }
 
-        disconnectedNodes = new HashSet<Integer>();
-        disconnectedNodes.add(10);
-        disconnectedNodes.add(12);
-        disconnectedNodesSets.put(2, disconnectedNodes);
+                };
+            }
+        };
     }
 
-    static Operation1<StartAggregatorCmd, Integer> startAggregatorOp = new Operation1<StartAggregatorCmd, Integer>() {
-
-        @Override
-        public StartAggregatorCmd generate(final Integer nodeId) {
-            return new StartAggregatorCmd<AggregatorComp, NatedAddress>() {
-                private NatedAddress aggregatorAddress;
-
-                @Override
-                public Class getNodeComponentDefinition() {
-                    return AggregatorComp.class;
-                }
-
-                @Override
-                public AggregatorComp.AggregatorInit getNodeComponentInit() {
-                    aggregatorAddress = new BasicNatedAddress(new BasicAddress(localHost, 23456, nodeId));
-                    return new AggregatorComp.AggregatorInit(aggregatorAddress);
-                }
-
-                @Override
-                public NatedAddress getAddress() {
-                    return aggregatorAddress;
-                }
-
-            };
-        }
-    };
-
-    static Operation1<StartNodeCmd, Integer> startNodeOp = new Operation1<StartNodeCmd, Integer>() {
-
-        @Override
-        public StartNodeCmd generate(final Integer nodeId) {
-            return new StartNodeCmd<HostComp, NatedAddress>() {
-                private NatedAddress nodeAddress;
-
-                @Override
-                public Class getNodeComponentDefinition() {
-                    return HostComp.class;
-                }
+    /**
+     * @param natedIds nodes started behind a NAT, their parents are the open
+     * nodes among the bootstrap nodes
+     */
+    static Operation1<StartNodeCmd, Integer> startNodeOp(final long seed, final BitSet natedIds,
+            final int bootstrapSize, final SwimConfig config) {
+        return new Operation1<StartNodeCmd, Integer>() {
+
+            @Override
+            public StartNodeCmd generate(final Integer nodeId) {
+                return new StartNodeCmd<HostComp, NatedAddress>() {
+                    private NatedAddress nodeAddress;
+
+                    @Override
+                    public Class getNodeComponentDefinition() {
+                        return HostComp.class;
+                    }
 
-                @Override
-                public HostComp.HostInit getNodeComponentInit(NatedAddress aggregatorServer, Set<NatedAddress> bootstrapNodes) {
-                    
-                    if (nodeId % 2 == 0) {
-                        //open address
-                        nodeAddress = new BasicNatedAddress(new BasicAddress(localHost, 12345, nodeId));
-                    } else {
-                        //nated address
-                        nodeAddress = new BasicNatedAddress(new BasicAddress(localHost, 12345, nodeId), NatType.NAT, bootstrapNodes);
+                    @Override
+                    public HostComp.HostInit getNodeComponentInit(NatedAddress aggregatorServer, Set<NatedAddress> bootstrapNodes) {
+                        Set<NatedAddress> parents = new HashSet<NatedAddress>();
+                        if (natedIds.get(nodeId)) {
+                            for (NatedAddress node : bootstrapNodes) {
+                                if (node.isOpen()) {
+                                    parents.add(node);
+                                }
+                            }
+                        }
+                        if (parents.isEmpty()) {
+                            //open address, also the fallback when no open parent is known yet
+                            nodeAddress = new BasicNatedAddress(new BasicAddress(localHost, 12345, nodeId));
+                        } else {
+                            //nated address
+                            nodeAddress = new BasicNatedAddress(new BasicAddress(localHost, 12345, nodeId), NatType.NAT, parents);
+                        }
+                        /**
+                         * we don't want all nodes to start their pseudo random
+                         * generators with same seed else they might behave the same
+                         */
+                        long nodeSeed = seed + nodeId;
+                        return new HostComp.HostInit(nodeAddress, bootstrapNodes, aggregatorServer, nodeSeed, config);
                     }
-                    /**
-                     * we don't want all nodes to start their pseudo random
-                     * generators with same seed else they might behave the same
-                     */
-                    long nodeSeed = seed + nodeId;
-                    return new HostComp.HostInit(nodeAddress, bootstrapNodes, aggregatorServer, nodeSeed);
-                }
 
-                @Override
-                public Integer getNodeId() {
-                    return nodeId;
-                }
+                    @Override
+                    public Integer getNodeId() {
+                        return nodeId;
+                    }
 
-                @Override
-                public NatedAddress getAddress() {
-                    return nodeAddress;
-                }
+                    @Override
+                    public NatedAddress getAddress() {
+                        return nodeAddress;
+                    }
 
-                @Override
-                public int bootstrapSize() {
-                    return 5;
-                }
+                    @Override
+                    public int bootstrapSize() {
+                        return bootstrapSize;
+                    }
 
-            };
-        }
-    };
+                };
+            }
+        };
+    }
 
     static Operation1<KillNodeCmd, Integer> killNodeOp = new Operation1<KillNodeCmd, Integer>() {
 
@@ -197,25 +187,24 @@ public class SwimScenario {
     //composite network model that can be built on any other network model
     //parameters: network model, set of disconnected nodes
     //a disconnected node will not be able to send or receive messages
-    static Operation1<ChangeNetworkModelCmd, Integer> disconnectedNodesNMOp = new Operation1<ChangeNetworkModelCmd, Integer>() {
-
-        @Override
-        public ChangeNetworkModelCmd generate(Integer setIndex) {
-            NetworkModel baseNetworkModel = new UniformRandomModel(50, 500);
-            NetworkModel compositeNetworkModel = new DisconnectedNodesNetworkModel(setIndex, baseNetworkModel, disconnectedNodesSets.get(setIndex));
-            return new ChangeNetworkModelCmd(compositeNetworkModel);
-        }
-    };
-
-    static Operation1<ChangeNetworkModelCmd, Integer> deadLinksNMOp = new Operation1<ChangeNetworkModelCmd, Integer>() {
-
-        @Override
-        public ChangeNetworkModelCmd generate(Integer setIndex) {
-            NetworkModel baseNetworkModel = new UniformRandomModel(50, 500);
-            NetworkModel compositeNetworkModel = new DeadLinkNetworkModel(setIndex, baseNetworkModel, deadLinksSets.get(setIndex));
-            return new ChangeNetworkModelCmd(compositeNetworkModel);
-        }
-    };
+    static Operation1<ChangeNetworkModelCmd, Integer> networkModelOp(final NetworkType type, final long minLatency, final long maxLatency,
+            final Set<Pair<Integer, Integer>> deadLinks, final Set<Integer> disconnectedNodes) {
+        return new Operation1<ChangeNetworkModelCmd, Integer>() {
+
+            @Override
+            public ChangeNetworkModelCmd generate(Integer setIndex) {
+                NetworkModel baseNetworkModel = new UniformRandomModel(minLatency, maxLatency);
+                switch (type) {
+                    case DEAD_LINKS:
+                        return new ChangeNetworkModelCmd(new DeadLinkNetworkModel(setIndex, baseNetworkModel, deadLinks));
+                    case DISCONNECTED_NODES:
+                        return new ChangeNetworkModelCmd(new DisconnectedNodesNetworkModel(setIndex, baseNetworkModel, disconnectedNodes));
+                    default:
+                        return new ChangeNetworkModelCmd(baseNetworkModel);
+                }
+            }
+        };
+    }
 
     static Operation<SimulationResult> simulationResult = new Operation<SimulationResult>() {
 
@@ -230,106 +219,279 @@ public class SwimScenario {
         }
     };
 
-    //Operations require Distributions as parameters
-    //1.ConstantDistribution - this will provide same parameter no matter how many times it is called
-    //2.BasicIntSequentialDistribution - on each call it gives the next int. Works more or less like a counter
-    //3.GenIntSequentialDistribution - give it a vector. It will draw elements from it on each call. 
-    //Once out of elements it will give null. 
-    //So be carefull for null pointer exception if you draw more times than elements
-    //check se.sics.p2ptoolbox.simulator.dsl.distribution for more distributions
-    //you can implement your own - by extending Distribution
+    /**
+     * The original 50 node boot run.
+     */
     public static SimulationScenario simpleBoot(final long seed) {
-        SwimScenario.seed = seed;
-        SimulationScenario scen = new SimulationScenario() {
-            {
-                StochasticProcess startAggregator = new StochasticProcess() {
-                    {
-                        eventInterArrivalTime(constant(1000));
-                        raise(1, startAggregatorOp, new ConstantDistribution(Integer.class, 0));
-                    }
-                };
+        return new Builder().build(seed);
+    }
 
-                StochasticProcess startPeers = new StochasticProcess() {
-                    {
-                        eventInterArrivalTime(constant(1000));
-                        Integer[] lista = new Integer[50];
-                        int t = 0;
-                        for(int i = 1; i < 101; i++){
-                            if(i%2==0)
-                                lista[t++] = i;
-                        }
-                        raise(50, startNodeOp, new GenIntSequentialDistribution(lista));
+    /**
+     * Parameters of a generated scenario, all times in simulated milliseconds.
+     * <p>
+     * The initial nodes get the even ids 2..2*nodes and join one every
+     * joinInterval. killDelay after the join, killFraction of them crash one
+     * every killInterval and churnEvents of the others are replaced one by
+     * one (crash plus a join with a fresh even id) every churnInterval. The run ends runTime after the
+     * join completed. Every id is drawn from the scenario seed, so a seed
+     * still gives a deterministic run.
+     * <p>
+     * For large runs keep joinInterval short and the bootstrap small and
+     * raise the status period of the swim config, the aggregator sees one
+     * report per node and period.
+     */
+    public static class Builder {
+
+        private int nodes = 50;
+        private long joinInterval = 1000;
+        private int bootstrapSize = 5;
+        private double natRatio = 0;
+        private double killFraction = 0;
+        private long killDelay = 5000;
+        private long killInterval = 100;
+        private int churnEvents = 0;
+        private long churnDelay = 5000;
+        private long churnInterval = 1000;
+        private NetworkType networkType = NetworkType.UNIFORM;
+        private long minLatency = 50;
+        private long maxLatency = 500;
+        //dead links, or disconnected nodes, picked among the initial nodes
+        private int faultyCount = 0;
+        private long runTime = 200000;
+        private SwimConfig swimConfig = SwimConfig.defaultConfig();
+
+        public Builder nodes(int nodes) {
+            this.nodes = nodes;
+            return this;
+        }
+
+        public Builder joinInterval(long joinInterval) {
+            this.joinInterval = joinInterval;
+            return this;
+        }
+
+        public Builder bootstrapSize(int bootstrapSize) {
+            this.bootstrapSize = bootstrapSize;
+            return this;
+        }
+
+        public Builder natRatio(double natRatio) {
+            this.natRatio = natRatio;
+            return this;
+        }
+
+        /**
+         * Crashes this fraction of the initial nodes, killInterval apart.
+         */
+        public Builder kill(double killFraction, long killDelay, long killInterval) {
+            this.killFraction = killFraction;
+            this.killDelay = killDelay;
+            this.killInterval = killInterval;
+            return this;
+        }
+
+        public Builder churn(int churnEvents, long churnDelay, long churnInterval) {
+            this.churnEvents = churnEvents;
+            this.churnDelay = churnDelay;
+            this.churnInterval = churnInterval;
+            return this;
+        }
+
+        public Builder latency(long minLatency, long maxLatency) {
+            this.minLatency = minLatency;
+            this.maxLatency = maxLatency;
+            return this;
+        }
+
+        public Builder network(NetworkType networkType, int faultyCount) {
+            this.networkType = networkType;
+            this.faultyCount = faultyCount;
+            return this;
+        }
+
+        public Builder runTime(long runTime) {
+            this.runTime = runTime;
+            return this;
+        }
+
+        public Builder swimConfig(SwimConfig swimConfig) {
+            this.swimConfig = swimConfig;
+            return this;
+        }
+
+        /**
+         * Overrides the parameters given as -Dswim.scenario.* properties:
+         * nodes, joinInterval, bootstrap, natRatio, killFraction, churn,
+         * churnInterval, network, faulty and runTime. With activeView (and
+         * optionally passiveView) the nodes run in partial view mode, with
+         * -Dswim.batch.window they batch their messages.
+         */
+        public Builder fromSystemProperties() {
+            nodes = Integer.getInteger("swim.scenario.nodes", nodes);
+            joinInterval = Long.getLong("swim.scenario.joinInterval", joinInterval);
+            bootstrapSize = Integer.getInteger("swim.scenario.bootstrap", bootstrapSize);
+            natRatio = Double.parseDouble(System.getProperty("swim.scenario.natRatio", Double.toString(natRatio)));
+            killFraction = Double.parseDouble(System.getProperty("swim.scenario.killFraction", Double.toString(killFraction)));
+            churnEvents = Integer.getInteger("swim.scenario.churn", churnEvents);
+            churnInterval = Long.getLong("swim.scenario.churnInterval", churnInterval);
+            networkType = NetworkType.valueOf(System.getProperty("swim.scenario.network", networkType.name()));
+            faultyCount = Integer.getInteger("swim.scenario.faulty", faultyCount);
+            runTime = Long.getLong("swim.scenario.runTime", runTime);
+            Integer activeView = Integer.getInteger("swim.scenario.activeView");
+            if (activeView != null) {
+                swimConfig = SwimConfig.partialViewConfig(activeView,
+                        Integer.getInteger("swim.scenario.passiveView", SwimConfig.DEFAULT_PASSIVE_VIEW_SIZE));
+            }
+            swimConfig = new SwimConfig.Builder(swimConfig)
+                    .batchWindow(Long.getLong("swim.batch.window", swimConfig.batchWindow))
+                    .build();
+            return this;
+        }
+
+        //Operations require Distributions as parameters
+        //1.ConstantDistribution - this will provide same parameter no matter how many times it is called
+        //2.BasicIntSequentialDistribution - on each call it gives the next int. Works more or less like a counter
+        //3.GenIntSequentialDistribution - give it a vector. It will draw elements from it on each call. 
+        //Once out of elements it will give null. 
+        //So be carefull for null pointer exception if you draw more times than elements
+        //check se.sics.p2ptoolbox.simulator.dsl.distribution for more distributions
+        //you can implement your own - by extending Distribution
+        public SimulationScenario build(final long seed) {
+            if (nodes < 1 || bootstrapSize < 0 || killFraction < 0 || killFraction > 1 || natRatio < 0 || natRatio > 1) {
+                throw new IllegalArgumentException("bad scenario parameters");
+            }
+            final int killCount = (int) (nodes * killFraction);
+            final int churnCount = Math.min(churnEvents, nodes - killCount);
+            Random rand = new Random(seed);
+
+            //crash victims are drawn without replacement from the initial ids
+            Integer[] victims = new Integer[nodes];
+            for (int i = 0; i < nodes; i++) {
+                victims[i] = 2 * (i + 1);
+            }
+            for (int i = 0; i < killCount + churnCount; i++) {
+                int j = i + rand.nextInt(nodes - i);
+                Integer tmp = victims[i];
+                victims[i] = victims[j];
+                victims[j] = tmp;
+            }
+            final Integer[] initialIds = nodeIds(1, nodes);
+            final Integer[] killIds = Arrays.copyOfRange(victims, 0, killCount);
+            final Integer[] churnKillIds = Arrays.copyOfRange(victims, killCount, killCount + churnCount);
+            final Integer[] churnJoinIds = nodeIds(nodes + 1, churnCount);
+
+            final BitSet natedIds = new BitSet(2 * (nodes + churnCount) + 1);
+            for (int id = 2; id <= 2 * (nodes + churnCount); id += 2) {
+                if (rand.nextDouble() < natRatio) {
+                    natedIds.set(id);
+                }
+            }
+
+            final Set<Pair<Integer, Integer>> deadLinks = new HashSet<Pair<Integer, Integer>>();
+            final Set<Integer> disconnectedNodes = new HashSet<Integer>();
+            if (networkType == NetworkType.DEAD_LINKS && nodes > 1) {
+                while (deadLinks.size() < Math.min(faultyCount, (long) nodes * (nodes - 1))) {
+                    int from = 2 * (1 + rand.nextInt(nodes));
+                    int to = 2 * (1 + rand.nextInt(nodes));
+                    if (from != to) {
+                        deadLinks.add(Pair.with(from, to));
                     }
-                };
-                
-                StochasticProcess startDeadPeer = new StochasticProcess() {
-                    {
-                        eventInterArrivalTime(constant(1000));
-                        Integer[] lista = new Integer[20];
-                        int t = 0;
-                        for(int i = 1; i < 41; i++){
-                            if(i%2==0)
-                                lista[t++] = i;
+                }
+            } else if (networkType == NetworkType.DISCONNECTED_NODES) {
+                while (disconnectedNodes.size() < Math.min(faultyCount, nodes)) {
+                    disconnectedNodes.add(2 * (1 + rand.nextInt(nodes)));
+                }
+            }
+
+            final Operation1<StartAggregatorCmd, Integer> startAggregatorOp = startAggregatorOp(swimConfig.statusPeriod);
+            final Operation1<StartNodeCmd, Integer> startNodeOp = startNodeOp(seed, natedIds, bootstrapSize, swimConfig);
+            final Operation1<ChangeNetworkModelCmd, Integer> networkModelOp
+                    = networkModelOp(networkType, minLatency, maxLatency, deadLinks, disconnectedNodes);
+            final long joinInterval = this.joinInterval;
+            final long killDelay = this.killDelay;
+            final long killInterval = this.killInterval;
+            final long churnDelay = this.churnDelay;
+            final long churnInterval = this.churnInterval;
+            final long runTime = this.runTime;
+
+            SimulationScenario scen = new SimulationScenario() {
+                {
+                    StochasticProcess startAggregator = new StochasticProcess() {
+                        {
+                            eventInterArrivalTime(constant(1000));
+                            raise(1, startAggregatorOp, new ConstantDistribution(Integer.class, 0));
                         }
-                        //raise(1, startNodeOp, new GenIntSequentialDistribution(new Integer[]{20}));
-                        raise(20, startNodeOp, new GenIntSequentialDistribution(lista));
-                    }
-                };
+                    };
 
-                StochasticProcess killPeers = new StochasticProcess() {
-                    {
-                        eventInterArrivalTime(constant(1000));
-                        Integer[] lista = new Integer[20];
-                        int t = 0;
-                        for(int i = 1; i < 41; i++){
-                            if(i%2==0)
-                                lista[t++] = i;
+                    StochasticProcess networkModel = new StochasticProcess() {
+                        {
+                            eventInterArrivalTime(constant(1000));
+                            raise(1, networkModelOp, new ConstantDistribution(Integer.class, 1));
                         }
-                        //raise(1, killNodeOp, new ConstantDistribution(Integer.class, 20));
-                       raise(20, killNodeOp, new GenIntSequentialDistribution(lista));
-                        
-                    }
-                };
-                
-                
+                    };
 
-                StochasticProcess deadLinks1 = new StochasticProcess() {
-                    {
-                        
-                        raise(1, deadLinksNMOp, new ConstantDistribution(Integer.class, 1));
-                    }
-                };
+                    StochasticProcess startPeers = new StochasticProcess() {
+                        {
+                            eventInterArrivalTime(constant(joinInterval));
+                            raise(initialIds.length, startNodeOp, new GenIntSequentialDistribution(initialIds));
+                        }
+                    };
 
-                StochasticProcess disconnectedNodes1 = new StochasticProcess() {
-                    {
-                        eventInterArrivalTime(constant(1000));
-                        raise(1, disconnectedNodesNMOp, new ConstantDistribution(Integer.class, 1));
+                    StochasticProcess fetchSimulationResult = new StochasticProcess() {
+                        {
+                            eventInterArrivalTime(constant(1000));
+                            raise(1, simulationResult);
+                        }
+                    };
+
+                    startAggregator.start();
+                    networkModel.startAfterTerminationOf(1000, startAggregator);
+                    startPeers.startAfterTerminationOf(1000, networkModel);
+
+                    if (killIds.length > 0) {
+                        StochasticProcess killPeers = new StochasticProcess() {
+                            {
+                                eventInterArrivalTime(constant(killInterval));
+                                raise(killIds.length, killNodeOp, new GenIntSequentialDistribution(killIds));
+                            }
+                        };
+                        killPeers.startAfterTerminationOf(killDelay, startPeers);
                     }
-                };
 
-                StochasticProcess fetchSimulationResult = new StochasticProcess() {
-                    {
-                        eventInterArrivalTime(constant(1000));
-                        raise(1, simulationResult);
+                    if (churnKillIds.length > 0) {
+                        StochasticProcess churnKill = new StochasticProcess() {
+                            {
+                                eventInterArrivalTime(constant(churnInterval));
+                                raise(churnKillIds.length, killNodeOp, new GenIntSequentialDistribution(churnKillIds));
+                            }
+                        };
+                        StochasticProcess churnJoin = new StochasticProcess() {
+                            {
+                                eventInterArrivalTime(constant(churnInterval));
+                                raise(churnJoinIds.length, startNodeOp, new GenIntSequentialDistribution(churnJoinIds));
+                            }
+                        };
+                        churnKill.startAfterTerminationOf(churnDelay, startPeers);
+                        churnJoin.startAfterStartOf(churnInterval / 2, churnKill);
                     }
-                };
 
-                startAggregator.start();
-                startPeers.startAfterTerminationOf(1000, startAggregator);
-               // killPeers.startAfterTerminationOf(5000, startPeers);
-                // startDeadPeer.startAfterTerminationOf(20000, killPeers);
-//                startAdditionalPeer.startAfterStartOf(10000, startPeers);
-//                stopPeers.startAfterTerminationOf(10000, startPeers);
-//                deadLinks1.startAfterTerminationOf(10000,startPeers);
-//                disconnectedNodes1.startAfterTerminationOf(10000, startPeers);
-                fetchSimulationResult.startAfterTerminationOf(200000, startPeers);
-                terminateAfterTerminationOf(1000, fetchSimulationResult);
+                    fetchSimulationResult.startAfterTerminationOf(runTime, startPeers);
+                    terminateAfterTerminationOf(1000, fetchSimulationResult);
+                }
+            };
 
-            }
-        };
+            scen.setSeed(seed);
 
-        scen.setSeed(seed);
+            return scen;
+        }
 
-        return scen;
+        //node ids are even, the i-th node is 2 * i
+        private static Integer[] nodeIds(int first, int count) {
+            Integer[] ids = new Integer[count];
+            for (int i = 0; i < count; i++) {
+                ids[i] = 2 * (first + i);
+            }
+            return ids;
+        }
     }
 }
@@ -0,0 +1,96 @@
+/*
+* To change this license header, choose License Headers in Project Properties.
+* To change this template file, choose Tools | Templates
+* and open the template in the editor.
+*/
+
+package se.kth.swim.trace;
+
+import org.slf4j.Logger;
+
+/**
+ * Per-message protocol events of one node. An event is a code plus a peer id
+ * and an optional int argument, so nothing is allocated unless tracing is on.
+ * <p>
+ * By default events go to the component logger at DEBUG level. Starting the
+ * JVM with -Dswim.trace=ring sends them to the binary {@link TraceRing}
+ * instead, whatever the log level, and the main entry point closes it with
+ * {@link TraceRing#closeIfOpen()} once the run is over.
+ *
+ * @author fabriziodemaria
+ */
+public final class EventTrace {
+
+    public static final int PING_SENT = 0;
+    public static final int PING_RECEIVED = 1;
+    public static final int PONG_SENT = 2;
+    public static final int PONG_RECEIVED = 3;
+    public static final int PROBE_SKIPPED = 4;
+    public static final int PING_REQ_SENT = 5;
+    public static final int PING_REQ_RECEIVED = 6;
+    public static final int PING_REQ_ACK_RECEIVED = 7;
+    public static final int MEMBER_ADDED = 8;
+    public static final int STATUS_SENT = 9;
+    public static final int NAT_DIRECT = 10;
+    public static final int NAT_TO_RELAY = 11;
+    public static final int NAT_RELAYED = 12;
+    public static final int NAT_DELIVERED = 13;
+    public static final int NAT_RECEIVED = 14;
+    public static final int PING_REQ_NACK_SENT = 15;
+    public static final int PING_REQ_NACK_RECEIVED = 16;
+    public static final int SYNC_SENT = 17;
+    public static final int SYNC_RECEIVED = 18;
+    public static final int JOIN_SENT = 19;
+    public static final int JOIN_RECEIVED = 20;
+    public static final int JOIN_CHUNK_RECEIVED = 21;
+    public static final int SHUFFLE_SENT = 22;
+    public static final int SHUFFLE_RECEIVED = 23;
+    public static final int DISCONNECT_SENT = 24;
+    public static final int DISCONNECT_RECEIVED = 25;
+
+    private static final String[] NAMES = {
+        "ping-sent", "ping-received", "pong-sent", "pong-received", "probe-skipped",
+        "ping-req-sent", "ping-req-received", "ping-req-ack-received", "member-added", "status-sent",
+        "nat-direct", "nat-to-relay", "nat-relayed", "nat-delivered", "nat-received",
+        "ping-req-nack-sent", "ping-req-nack-received", "sync-sent", "sync-received",
+        "join-sent", "join-received", "join-chunk-received",
+        "shuffle-sent", "shuffle-received", "disconnect-sent", "disconnect-received"
+    };
+
+    private static final boolean RING = "ring".equals(System.getProperty("swim.trace"));
+
+    private final Logger log;
+    private final int nodeId;
+    private final TraceRing ring;
+
+    public EventTrace(Logger log, int nodeId) {
+        this.log = log;
+        this.nodeId = nodeId;
+        this.ring = RING ? TraceRing.get() : null;
+    }
+
+    public boolean isEnabled() {
+        return ring != null || log.isDebugEnabled();
+    }
+
+    public void event(int event, int peer) {
+        event(event, peer, 0);
+    }
+
+    public void event(int event, int peer, int arg) {
+        if (ring != null) {
+            ring.record(event, nodeId, peer, arg);
+        } else if (log.isDebugEnabled()) {
+            log.debug("{} {} peer:{} arg:{}", new Object[]{nodeId, NAMES[event], peer, arg});
+        }
+    }
+
+    /**
+     * Writes out the ring records of every node, called from a protocol timer.
+     */
+    public void flush() {
+        if (ring != null) {
+            ring.drain();
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/*
+* To change this license header, choose License Headers in Project Properties.
+* To change this template file, choose Tools | Templates
+* and open the template in the editor.
+*/
+
+package se.kth.swim.trace;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Process wide ring of fixed size binary trace records. Producers never block
+ * or allocate. Nothing runs in the background: the records are written to the
+ * file by {@link #drain()}, which the nodes call from their own protocol
+ * timer, and by {@link #closeIfOpen()} at the end of the run. When the drains
+ * fall a whole ring behind, the oldest records are overwritten and counted as
+ * dropped.
+ * <p>
+ * Every slot is a seqlock: its sequence is odd while a producer writes it and
+ * even once the record is complete, so a reader that sees the same even
+ * sequence before and after reading the fields knows they are not torn.
+ * <p>
+ * A record is 24 big endian bytes: time (long), event (int), node (int),
+ * peer (int), argument (int).
+ *
+ * @author fabriziodemaria
+ */
+public final class TraceRing {
+
+    private static final Logger log = LoggerFactory.getLogger(TraceRing.class);
+
+    public static final int RECORD_BYTES = 24;
+    private static final int CAPACITY = 1 << 16;
+
+    private static volatile TraceRing instance;
+
+    private final int mask = CAPACITY - 1;
+    private final AtomicLongArray times = new AtomicLongArray(CAPACITY);
+    private final AtomicLongArray heads = new AtomicLongArray(CAPACITY);
+    private final AtomicLongArray tails = new AtomicLongArray(CAPACITY);
+    //2 * seq + 1 while record seq is written to the slot, 2 * seq + 2 once it is published, 0 if none yet
+    private final AtomicLongArray sequences = new AtomicLongArray(CAPACITY);
+    private final AtomicLong next = new AtomicLong();
+    private long cursor = 0;
+    private long dropped = 0;
+    private boolean closed = false;
+
+    private final FileChannel out;
+    private final ByteBuffer buf = ByteBuffer.allocateDirect(RECORD_BYTES * 4096);
+
+    private TraceRing(String file) throws IOException {
+        this.out = new FileOutputStream(file).getChannel();
+    }
+
+    /**
+     * @return the shared ring, created on first use
+     */
+    public static TraceRing get() {
+        TraceRing ring = instance;
+        if (ring == null) {
+            synchronized (TraceRing.class) {
+                ring = instance;
+                if (ring == null) {
+                    String file = System.getProperty("swim.trace.file", "swim-trace.bin");
+                    try {
+                        ring = new TraceRing(file);
+                    } catch (IOException ex) {
+                        throw new RuntimeException("cannot open trace file " + file, ex);
+                    }
+                    instance = ring;
+                }
+            }
+        }
+        return ring;
+    }
+
+    /**
+     * Writes what is left and closes the shared ring, if it was ever used.
+     */
+    public static void closeIfOpen() {
+        TraceRing ring = instance;
+        if (ring != null) {
+            ring.close();
+        }
+    }
+
+    public void record(int event, int node, int peer, int arg) {
+        long seq = next.getAndIncrement();
+        int slot = (int) (seq & mask);
+        //the ordered stores keep the odd sequence ahead of the fields and the fields ahead of the even one
+        sequences.set(slot, 2 * seq + 1);
+        times.lazySet(slot, System.currentTimeMillis());
+        heads.lazySet(slot, ((long) event << 32) | (node & 0xFFFFFFFFL));
+        tails.lazySet(slot, ((long) peer << 32) | (arg & 0xFFFFFFFFL));
+        sequences.lazySet(slot, 2 * seq + 2);
+    }
+
+    /**
+     * Writes the records published since the last drain to the file.
+     */
+    public synchronized void drain() {
+        if (closed) {
+            return;
+        }
+        long limit = next.get();
+        while (cursor < limit) {
+            int slot = (int) (cursor & mask);
+            long before = sequences.get(slot);
+            if (before < 2 * cursor + 2) {
+                //claimed but not yet published, retry on the next drain
+                break;
+            }
+            if (before > 2 * cursor + 2) {
+                //lapped by the producers, skip to the oldest record still in the ring
+                long oldest = Math.max(cursor + 1, next.get() - CAPACITY);
+                dropped += oldest - cursor;
+                cursor = oldest;
+                continue;
+            }
+            long time = times.get(slot);
+            long head = heads.get(slot);
+            long tail = tails.get(slot);
+            if (sequences.get(slot) != before) {
+                //overwritten while read, the next pass counts it as dropped
+                continue;
+            }
+            if (buf.remaining() < RECORD_BYTES) {
+                flush();
+            }
+            buf.putLong(time).putLong(head).putLong(tail);
+            cursor++;
+        }
+        flush();
+    }
+
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        drain();
+        closed = true;
+        try {
+            out.close();
+        } catch (IOException ex) {
+            log.warn("closing trace file failed:{}", ex.getMessage());
+        }
+    }
+
+    public synchronized long getDropped() {
+        return dropped;
+    }
+
+    /*
+
+
+    SUPPORTING CODE
+
+
+    */
+
+    private void flush() {
+        buf.flip();
+        try {
+            while (buf.hasRemaining()) {
+                out.write(buf);
+            }
+        } catch (IOException ex) {
+            log.warn("writing trace records failed:{}", ex.getMessage());
+        }
+        buf.clear();
+    }
+}
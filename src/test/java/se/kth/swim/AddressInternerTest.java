@@ -0,0 +1,94 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package se.kth.swim;
+
+import java.net.InetAddress;
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import se.sics.p2ptoolbox.util.network.NatType;
+import se.sics.p2ptoolbox.util.network.NatedAddress;
+import se.sics.p2ptoolbox.util.network.impl.BasicAddress;
+import se.sics.p2ptoolbox.util.network.impl.BasicNatedAddress;
+
+public class AddressInternerTest {
+
+    private AddressInterner interner;
+
+    @Before
+    public void setUp() {
+        interner = new AddressInterner(0);
+    }
+
+    @Test
+    public void lookupsLeaveNoEntry() throws Exception {
+        NatedAddress a = open(1);
+        assertSame(a, interner.intern(a));
+        assertEquals(0, interner.size());
+    }
+
+    @Test
+    public void equalCopiesCollapse() throws Exception {
+        NatedAddress a = interner.update(open(1));
+        NatedAddress copy = open(1);
+        assertNotSame(a, copy);
+        assertSame(a, interner.intern(copy));
+        assertSame(a, interner.update(copy));
+        assertEquals(1, interner.size());
+    }
+
+    @Test
+    public void otherParentsAreNotCanonicalUntilUpdated() throws Exception {
+        NatedAddress p1 = interner.update(open(1));
+        NatedAddress p2 = interner.update(open(2));
+        NatedAddress old = interner.update(nated(10, p1));
+        NatedAddress moved = nated(10, p2);
+        assertSame(moved, interner.intern(moved));
+        assertSame(old, interner.intern(nated(10, p1)));
+        assertSame(moved, interner.update(moved));
+        assertSame(moved, interner.intern(nated(10, p2)));
+    }
+
+    @Test
+    public void parentsAreShared() throws Exception {
+        NatedAddress p1 = interner.update(open(1));
+        NatedAddress child = interner.update(nated(10, open(1)));
+        assertSame(p1, child.getParents().iterator().next());
+    }
+
+    @Test
+    public void removedNodesAreForgotten() throws Exception {
+        NatedAddress a = interner.update(open(1));
+        interner.remove(1);
+        assertEquals(0, interner.size());
+        NatedAddress copy = open(1);
+        assertSame(copy, interner.intern(copy));
+        assertNotSame(a, interner.intern(copy));
+        assertEquals(0, interner.size());
+    }
+
+    /*
+
+
+    SUPPORTING CODE
+
+
+    */
+
+    private static NatedAddress open(int id) throws Exception {
+        return new BasicNatedAddress(new BasicAddress(InetAddress.getByName("127.0.0.1"), 12345, id));
+    }
+
+    private static NatedAddress nated(int id, NatedAddress... parents) throws Exception {
+        Set<NatedAddress> parentSet = new HashSet<NatedAddress>();
+        for(NatedAddress parent : parents){
+            parentSet.add(parent);
+        }
+        return new BasicNatedAddress(new BasicAddress(InetAddress.getByName("127.0.0.2"), 12345, id), NatType.NAT, parentSet);
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package se.kth.swim;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class IntHashMapTest {
+
+    @Test
+    public void putGetRemove() {
+        IntHashMap<String> map = new IntHashMap<String>();
+        assertNull(map.get(7));
+        assertFalse(map.containsKey(7));
+        assertNull(map.put(7, "a"));
+        assertEquals("a", map.get(7));
+        assertEquals("a", map.put(7, "b"));
+        assertEquals(1, map.size());
+        assertEquals("b", map.remove(7));
+        assertNull(map.remove(7));
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    public void anyKey() {
+        IntHashMap<Integer> map = new IntHashMap<Integer>();
+        int[] keys = {0, -1, Integer.MIN_VALUE, Integer.MAX_VALUE};
+        for (int i = 0; i < keys.length; i++) {
+            map.put(keys[i], i);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            assertEquals(Integer.valueOf(i), map.get(keys[i]));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nullValue() {
+        new IntHashMap<String>().put(1, null);
+    }
+
+    @Test
+    public void rehashKeepsEveryEntry() {
+        IntHashMap<Integer> map = new IntHashMap<Integer>(2);
+        for (int i = 0; i < 10000; i++) {
+            map.put(i * 16, i);
+        }
+        assertEquals(10000, map.size());
+        for (int i = 0; i < 10000; i++) {
+            assertEquals(Integer.valueOf(i), map.get(i * 16));
+        }
+        assertFalse(map.containsKey(1));
+    }
+
+    @Test
+    public void clear() {
+        IntHashMap<Integer> map = new IntHashMap<Integer>();
+        for (int i = 0; i < 100; i++) {
+            map.put(i, i);
+        }
+        map.clear();
+        assertEquals(0, map.size());
+        for (int i = 0; i < 100; i++) {
+            assertFalse(map.containsKey(i));
+        }
+        map.put(5, 50);
+        assertEquals(Integer.valueOf(50), map.get(5));
+    }
+
+    //few keys in a small table, so the probe chains collide and every remove
+    //shifts entries back across them
+    @Test
+    public void collisionsAgainstHashMap() {
+        Random rand = new Random(7);
+        IntHashMap<Integer> map = new IntHashMap<Integer>(4);
+        Map<Integer, Integer> model = new HashMap<Integer, Integer>();
+        for (int step = 0; step < 200000; step++) {
+            int key = rand.nextInt(64) - 32;
+            switch (rand.nextInt(3)) {
+                case 0: {
+                    Integer value = rand.nextInt(1000);
+                    assertEquals(model.put(key, value), map.put(key, value));
+                    break;
+                }
+                case 1:
+                    assertEquals(model.remove(key), map.remove(key));
+                    break;
+                default:
+                    assertEquals(model.get(key), map.get(key));
+            }
+            assertEquals(model.size(), map.size());
+        }
+        for (int key = -32; key < 32; key++) {
+            assertEquals(model.containsKey(key), map.containsKey(key));
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package se.kth.swim;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class IntIntMapTest {
+
+    @Test
+    public void putGetRemove() {
+        IntIntMap map = new IntIntMap();
+        assertEquals(-1, map.get(7));
+        assertFalse(map.containsKey(7));
+        assertEquals(-1, map.put(7, 70));
+        assertEquals(70, map.get(7));
+        assertEquals(70, map.put(7, 71));
+        assertEquals(1, map.size());
+        assertEquals(71, map.remove(7));
+        assertEquals(-1, map.remove(7));
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    public void zeroIsAValue() {
+        IntIntMap map = new IntIntMap();
+        map.put(0, 0);
+        assertTrue(map.containsKey(0));
+        assertEquals(0, map.get(0));
+    }
+
+    @Test
+    public void anyKey() {
+        IntIntMap map = new IntIntMap();
+        int[] keys = {0, -1, Integer.MIN_VALUE, Integer.MAX_VALUE};
+        for (int i = 0; i < keys.length; i++) {
+            map.put(keys[i], i);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            assertEquals(i, map.get(keys[i]));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeValue() {
+        new IntIntMap().put(1, -1);
+    }
+
+    @Test
+    public void rehashKeepsEveryEntry() {
+        IntIntMap map = new IntIntMap(2);
+        for (int i = 0; i < 10000; i++) {
+            map.put(i * 16, i);
+        }
+        assertEquals(10000, map.size());
+        for (int i = 0; i < 10000; i++) {
+            assertEquals(i, map.get(i * 16));
+        }
+        assertFalse(map.containsKey(1));
+    }
+
+    @Test
+    public void clear() {
+        IntIntMap map = new IntIntMap();
+        for (int i = 0; i < 100; i++) {
+            map.put(i, i);
+        }
+        map.clear();
+        assertEquals(0, map.size());
+        for (int i = 0; i < 100; i++) {
+            assertFalse(map.containsKey(i));
+        }
+        map.put(5, 50);
+        assertEquals(50, map.get(5));
+    }
+
+    //few keys in a small table, so the probe chains collide and every remove
+    //shifts entries back across them
+    @Test
+    public void collisionsAgainstHashMap() {
+        Random rand = new Random(7);
+        IntIntMap map = new IntIntMap(4);
+        Map<Integer, Integer> model = new HashMap<Integer, Integer>();
+        for (int step = 0; step < 200000; step++) {
+            int key = rand.nextInt(64) - 32;
+            switch (rand.nextInt(3)) {
+                case 0: {
+                    int value = rand.nextInt(1000);
+                    Integer old = model.put(key, value);
+                    assertEquals(old == null ? -1 : old.intValue(), map.put(key, value));
+                    break;
+                }
+                case 1: {
+                    Integer old = model.remove(key);
+                    assertEquals(old == null ? -1 : old.intValue(), map.remove(key));
+                    break;
+                }
+                default: {
+                    Integer value = model.get(key);
+                    assertEquals(value == null ? -1 : value.intValue(), map.get(key));
+                }
+            }
+            assertEquals(model.size(), map.size());
+        }
+        for (int key = -32; key < 32; key++) {
+            assertEquals(model.containsKey(key), map.containsKey(key));
+        }
+    }
+}
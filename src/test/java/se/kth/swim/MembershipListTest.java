@@ -0,0 +1,175 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package se.kth.swim;
+
+import java.net.InetAddress;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import se.sics.p2ptoolbox.util.network.NatedAddress;
+import se.sics.p2ptoolbox.util.network.impl.BasicAddress;
+import se.sics.p2ptoolbox.util.network.impl.BasicNatedAddress;
+
+public class MembershipListTest {
+
+    private NatedAddress self;
+    private MembershipList list;
+
+    @Before
+    public void setUp() throws Exception {
+        self = address(0);
+        list = new MembershipList(new HashSet<NatedAddress>(), self);
+        for(int id = 1; id <= 20; id++){
+            list.add(address(id));
+        }
+    }
+
+    @Test
+    public void probeRoundVisitsEveryMemberOnce() {
+        for(int round = 0; round < 3; round++){
+            Set<Integer> probed = probe(list.size());
+            assertEquals(20, probed.size());
+        }
+    }
+
+    @Test
+    public void membersAddedDuringARoundAreProbedInIt() throws Exception {
+        Set<Integer> probed = probe(8);
+        for(int id = 21; id <= 30; id++){
+            list.add(address(id));
+        }
+        //the rest of the round: the 12 old members not probed yet and the 10 new ones
+        Set<Integer> rest = probe(list.size() - 8);
+        assertEquals(22, rest.size());
+        for(int id : probed){
+            assertFalse(rest.contains(id));
+        }
+        for(int id = 21; id <= 30; id++){
+            assertTrue(rest.contains(id));
+        }
+    }
+
+    @Test
+    public void membersRemovedDuringARoundAreSkipped() {
+        Set<Integer> probed = probe(10);
+        Set<Integer> removed = new HashSet<Integer>();
+        //half of them already probed, half not
+        for(int id = 1; id <= 20; id += 2){
+            list.remove(id);
+            removed.add(id);
+        }
+        int notProbed = 0;
+        for(int id = 1; id <= 20; id++){
+            if(!removed.contains(id) && !probed.contains(id)){
+                notProbed++;
+            }
+        }
+        Set<Integer> rest = probe(notProbed);
+        assertEquals(notProbed, rest.size());
+        for(int id : rest){
+            assertFalse(removed.contains(id));
+            assertFalse(probed.contains(id));
+        }
+        //and the next round has everybody left
+        assertEquals(10, probe(list.size()).size());
+    }
+
+    @Test
+    public void suspectedCountFollowsAddRemove() throws Exception {
+        list.suspectNode(3);
+        list.suspectNode(4);
+        list.suspectNode(4);
+        assertEquals(2, list.suspectedCount());
+        list.remove(3);
+        assertEquals(1, list.suspectedCount());
+        list.add(address(3), true, 5);
+        assertEquals(2, list.suspectedCount());
+        assertEquals(5, list.getIncarnation(address(3)));
+        list.add(address(3), false, 6);
+        assertEquals(1, list.suspectedCount());
+        list.unsuspectNode(4);
+        assertEquals(0, list.suspectedCount());
+    }
+
+    //rows move on every insert, remove and shuffle, the per member columns must move with them
+    @Test
+    public void columnsStayTogether() throws Exception {
+        Random rand = new Random(3);
+        Map<Integer, Integer> incarnations = new HashMap<Integer, Integer>();
+        Set<Integer> suspected = new HashSet<Integer>();
+        for(int id = 1; id <= 20; id++){
+            incarnations.put(id, 0);
+        }
+        for(int step = 0; step < 50000; step++){
+            int id = 1 + rand.nextInt(60);
+            switch(rand.nextInt(5)){
+                case 0:
+                    int incarnation = rand.nextInt(100);
+                    boolean suspect = rand.nextBoolean();
+                    list.add(address(id), suspect, incarnation);
+                    incarnations.put(id, incarnation);
+                    if(suspect){
+                        suspected.add(id);
+                    } else {
+                        suspected.remove(id);
+                    }
+                    break;
+                case 1:
+                    list.remove(id);
+                    incarnations.remove(id);
+                    suspected.remove(id);
+                    break;
+                case 2:
+                    list.suspectNode(id);
+                    if(incarnations.containsKey(id)){
+                        suspected.add(id);
+                    }
+                    break;
+                default:
+                    if(!list.isEmpty()){
+                        NatedAddress probed = list.nextToProbe();
+                        assertTrue(incarnations.containsKey(probed.getId()));
+                    }
+            }
+            assertEquals(incarnations.size(), list.size());
+            assertEquals(suspected.size(), list.suspectedCount());
+        }
+        for(int id = 1; id <= 60; id++){
+            assertEquals(incarnations.containsKey(id), list.contains(id));
+            if(incarnations.containsKey(id)){
+                assertEquals(Integer.valueOf(id), list.getAddress(id).getId());
+                assertEquals(incarnations.get(id).intValue(), list.getIncarnation(address(id)));
+                assertEquals(suspected.contains(id), list.isSuspected(id));
+            }
+        }
+    }
+
+    /*
+
+
+    SUPPORTING CODE
+
+
+    */
+
+    //the ids of the next n probe targets, fails on a repeat
+    private Set<Integer> probe(int n) {
+        Set<Integer> probed = new HashSet<Integer>();
+        for(int i = 0; i < n; i++){
+            assertTrue(probed.add(list.nextToProbe().getId()));
+        }
+        return probed;
+    }
+
+    private static NatedAddress address(int id) throws Exception {
+        return new BasicNatedAddress(new BasicAddress(InetAddress.getByName("127.0.0.1"), 12345, id));
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package se.kth.swim;
+
+import java.net.InetAddress;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import se.kth.swim.msg.net.InfoType;
+import se.sics.p2ptoolbox.util.network.NatType;
+import se.sics.p2ptoolbox.util.network.NatedAddress;
+import se.sics.p2ptoolbox.util.network.impl.BasicAddress;
+import se.sics.p2ptoolbox.util.network.impl.BasicNatedAddress;
+
+public class RelayCacheTest {
+
+    private static final long TIMEOUT = 5000;
+
+    private RelayCache cache;
+    private NatedAddress parent1;
+    private NatedAddress parent2;
+
+    @Before
+    public void setUp() throws Exception {
+        cache = new RelayCache(TIMEOUT, new Random(1));
+        parent1 = open(1);
+        parent2 = open(2);
+    }
+
+    @Test
+    public void unansweredSendsAreNotMisses() throws Exception {
+        NatedAddress dest = nated(100, parent1, parent2);
+        NatedAddress first = cache.select(dest, false, 0);
+        //pongs and acks never get an answer, long silences after them are fine
+        for(int i = 1; i <= 10; i++){
+            assertSame(first, cache.select(dest, false, i * 2 * TIMEOUT));
+        }
+    }
+
+    @Test
+    public void unansweredRequestsAreMisses() throws Exception {
+        NatedAddress dest = nated(100, parent1, parent2);
+        NatedAddress first = cache.select(dest, true, 0);
+        cache.select(dest, true, 2 * TIMEOUT);
+        //second miss on the same parent, the other one takes over
+        assertNotSame(first, cache.select(dest, true, 4 * TIMEOUT));
+    }
+
+    @Test
+    public void fullCacheEvictsTheLeastRecentlyUsedRoute() throws Exception {
+        for(int id = 100; id < 100 + RelayCache.MAX_ROUTES; id++){
+            cache.select(nated(id, parent1, parent2), false, 0);
+        }
+        assertEquals(RelayCache.MAX_ROUTES, cache.size());
+        //100 is used again, 101 is now the least recently used
+        cache.select(nated(100, parent1, parent2), false, 1);
+        cache.select(nated(100 + RelayCache.MAX_ROUTES, parent1, parent2), false, 2);
+        assertEquals(RelayCache.MAX_ROUTES, cache.size());
+        assertTrue(cache.hasRoute(100));
+        assertFalse(cache.hasRoute(101));
+        assertTrue(cache.hasRoute(102));
+        assertTrue(cache.hasRoute(100 + RelayCache.MAX_ROUTES));
+    }
+
+    @Test
+    public void deadNodesLeaveTheCache() throws Exception {
+        NatedAddress dest = nated(100, parent1, parent2);
+        cache.select(dest, false, 0);
+        cache.update(dest, InfoType.DEADNODE);
+        assertFalse(cache.hasRoute(100));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void deadParentStaysDown() throws Exception {
+        NatedAddress dest = nated(100, parent1, parent2);
+        NatedAddress first = cache.select(dest, false, 0);
+        cache.update(first, InfoType.SUSPECTEDNODE);
+        cache.update(first, InfoType.DEADNODE);
+        assertTrue(cache.isDown(first.getId()));
+        NatedAddress other = first == parent1 ? parent2 : parent1;
+        for(int i = 1; i < 10; i++){
+            assertSame(other, cache.select(dest, false, i));
+        }
+        //a rejoin makes it usable again
+        cache.update(first, InfoType.NEWNODE);
+        assertFalse(cache.isDown(first.getId()));
+    }
+
+    @Test
+    public void staleSlotDoesNotEvictASuspectedAgainParent() throws Exception {
+        cache.update(parent1, InfoType.SUSPECTEDNODE);
+        cache.update(parent1, InfoType.ALIVENODE);
+        cache.update(parent1, InfoType.SUSPECTEDNODE);
+        //fills the ring, the first slot of parent1 is the oldest one and goes
+        for(int id = 1000; id < 1000 + RelayCache.MAX_ROUTES - 1; id++){
+            cache.update(open(id), InfoType.SUSPECTEDNODE);
+        }
+        assertTrue(cache.isDown(parent1.getId()));
+        assertEquals(RelayCache.MAX_ROUTES, cache.downSize());
+    }
+
+    @Test
+    public void suspectedParentsAreBounded() throws Exception {
+        for(int id = 1; id <= RelayCache.MAX_ROUTES + 10; id++){
+            cache.update(open(id), InfoType.SUSPECTEDNODE);
+        }
+        assertEquals(RelayCache.MAX_ROUTES, cache.downSize());
+        cache.update(open(RelayCache.MAX_ROUTES + 10), InfoType.ALIVENODE);
+        assertEquals(RelayCache.MAX_ROUTES - 1, cache.downSize());
+    }
+
+    @Test
+    public void suspectedParentIsAvoided() throws Exception {
+        NatedAddress dest = nated(100, parent1, parent2);
+        NatedAddress first = cache.select(dest, false, 0);
+        cache.update(first, InfoType.SUSPECTEDNODE);
+        NatedAddress other = first == parent1 ? parent2 : parent1;
+        assertSame(other, cache.select(dest, false, 1));
+        cache.update(first, InfoType.ALIVENODE);
+        assertSame(first, cache.select(dest, false, 2));
+    }
+
+    /*
+
+
+    SUPPORTING CODE
+
+
+    */
+
+    private static NatedAddress open(int id) throws Exception {
+        return new BasicNatedAddress(new BasicAddress(InetAddress.getByName("127.0.0.1"), 12345, id));
+    }
+
+    private static NatedAddress nated(int id, NatedAddress... parents) throws Exception {
+        Set<NatedAddress> parentSet = new HashSet<NatedAddress>();
+        for(NatedAddress parent : parents){
+            parentSet.add(parent);
+        }
+        return new BasicNatedAddress(new BasicAddress(InetAddress.getByName("127.0.0.2"), 12345, id), NatType.NAT, parentSet);
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package se.kth.swim;
+
+import java.net.InetAddress;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import se.kth.swim.msg.net.InfoPiggyback;
+import se.kth.swim.msg.net.InfoType;
+import se.sics.p2ptoolbox.util.network.NatedAddress;
+import se.sics.p2ptoolbox.util.network.impl.BasicAddress;
+import se.sics.p2ptoolbox.util.network.impl.BasicNatedAddress;
+
+public class RumorCacheTest {
+
+    private RumorCache cache;
+    private NatedAddress node;
+
+    @Before
+    public void setUp() throws Exception {
+        cache = new RumorCache(4);
+        node = new BasicNatedAddress(new BasicAddress(InetAddress.getByName("127.0.0.1"), 12345, 7));
+    }
+
+    @Test
+    public void repeatedUpdateIsNotNew() {
+        assertTrue(cache.isNew(new InfoPiggyback(InfoType.SUSPECTEDNODE, node, 1)));
+        assertFalse(cache.isNew(new InfoPiggyback(InfoType.SUSPECTEDNODE, node, 1)));
+        assertFalse(cache.isNew(new InfoPiggyback(InfoType.ALIVENODE, node, 1)));
+        assertTrue(cache.isNew(new InfoPiggyback(InfoType.ALIVENODE, node, 2)));
+    }
+
+    @Test
+    public void higherIncarnationReplacesDead() {
+        assertTrue(cache.isNew(new InfoPiggyback(InfoType.DEADNODE, node, 3)));
+        assertFalse(cache.isNew(new InfoPiggyback(InfoType.ALIVENODE, node, 3)));
+        assertTrue(cache.isNew(new InfoPiggyback(InfoType.ALIVENODE, node, 4)));
+        assertFalse(cache.isNew(new InfoPiggyback(InfoType.ALIVENODE, node, 4)));
+    }
+}
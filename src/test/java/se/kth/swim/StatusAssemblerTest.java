@@ -0,0 +1,53 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package se.kth.swim;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import se.kth.swim.msg.Status;
+
+public class StatusAssemblerTest {
+
+    private StatusReporter reporter;
+    private StatusAssembler assembler;
+
+    @Before
+    public void setUp() {
+        reporter = new StatusReporter(10);
+        assembler = new StatusAssembler();
+    }
+
+    @Test
+    public void deltaIsAddedToTheAckedBase() {
+        Status full = reporter.report(new Status(5));
+        assertEquals(Status.FULL, full.baseSeq);
+        assertEquals(5, assembler.apply(1, full).values()[0]);
+        reporter.acked(full.seq, false);
+        Status delta = reporter.report(new Status(8));
+        assertEquals(full.seq, delta.baseSeq);
+        assertEquals(8, assembler.apply(1, delta).values()[0]);
+    }
+
+    @Test
+    public void duplicateIsStaleNotAGap() {
+        Status full = reporter.report(new Status(5));
+        assertNotNull(assembler.apply(1, full));
+        assertTrue(assembler.isStale(1, full.seq));
+        assertNull(assembler.apply(1, full));
+        assertFalse(assembler.isStale(2, full.seq));
+    }
+
+    @Test
+    public void unknownBaseIsAGap() {
+        Status first = reporter.report(new Status(5));
+        reporter.acked(first.seq, false);
+        //the aggregator never got the base of this delta
+        Status delta = reporter.report(new Status(8));
+        assertFalse(assembler.isStale(1, delta.seq));
+        assertNull(assembler.apply(1, delta));
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package se.kth.swim;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import se.sics.p2ptoolbox.util.network.NatedAddress;
+import se.sics.p2ptoolbox.util.network.impl.BasicAddress;
+import se.sics.p2ptoolbox.util.network.impl.BasicNatedAddress;
+
+public class TimerWheelTest {
+
+    private static final long TICK = 10;
+    private static final int WHEEL_SIZE = 8;
+
+    private TimerWheel wheel;
+    private Recorder recorder;
+    private NatedAddress a;
+    private NatedAddress b;
+    private NatedAddress c;
+
+    @Before
+    public void setUp() throws Exception {
+        wheel = new TimerWheel(TICK, WHEEL_SIZE, 2);
+        recorder = new Recorder();
+        a = address(1);
+        b = address(2);
+        c = address(3);
+    }
+
+    @Test
+    public void roundsUpToWholeTicks() {
+        wheel.schedule(0, a, 1);
+        wheel.schedule(0, b, 21);
+        assertEquals(1, tickUntilFired(a));
+        assertEquals(2, tickUntilFired(b));
+    }
+
+    @Test
+    public void delaysLongerThanTheWheel() {
+        wheel.schedule(0, a, TICK * WHEEL_SIZE);
+        wheel.schedule(0, b, TICK * (WHEEL_SIZE + 1));
+        wheel.schedule(0, c, TICK * (3 * WHEEL_SIZE + 5));
+        assertEquals(WHEEL_SIZE, tickUntilFired(a));
+        assertEquals(1, tickUntilFired(b));
+        assertEquals(2 * WHEEL_SIZE + 4, tickUntilFired(c));
+        assertEquals(3, recorder.fired.size());
+    }
+
+    @Test
+    public void reschedulingReplacesTheDeadline() {
+        wheel.schedule(0, a, TICK * 2);
+        wheel.schedule(0, a, TICK * (WHEEL_SIZE + 3));
+        assertTrue(wheel.isScheduled(0, a));
+        assertEquals(WHEEL_SIZE + 3, tickUntilFired(a));
+        assertEquals(1, recorder.fired.size());
+        assertFalse(wheel.isScheduled(0, a));
+
+        //and the other way round, from many rounds to a short delay
+        wheel.schedule(0, a, TICK * (2 * WHEEL_SIZE));
+        wheel.schedule(0, a, TICK);
+        assertEquals(1, tickUntilFired(a));
+        ticks(3 * WHEEL_SIZE);
+        assertEquals(2, recorder.fired.size());
+    }
+
+    @Test
+    public void kindsAreIndependent() {
+        wheel.schedule(0, a, TICK);
+        wheel.schedule(1, a, TICK * 3);
+        assertTrue(wheel.cancel(0, a));
+        assertFalse(wheel.cancel(0, a));
+        assertTrue(wheel.isScheduled(1, a));
+        assertEquals(3, tickUntilFired(a));
+        assertEquals(1, recorder.kinds.get(0).intValue());
+    }
+
+    @Test
+    public void cancelDuringTickOfADeadlineDueInTheSameTick() {
+        wheel.schedule(0, a, TICK);
+        wheel.schedule(0, b, TICK);
+        //whichever comes first cancels the other
+        recorder.onFire = new Runnable() {
+            @Override
+            public void run() {
+                NatedAddress other = recorder.fired.get(0) == a ? b : a;
+                assertTrue(wheel.cancel(0, other));
+            }
+        };
+        wheel.tick(recorder);
+        assertEquals(1, recorder.fired.size());
+        assertFalse(wheel.isScheduled(0, a));
+        assertFalse(wheel.isScheduled(0, b));
+        ticks(2 * WHEEL_SIZE);
+        assertEquals(1, recorder.fired.size());
+    }
+
+    @Test
+    public void cancelDuringTickOfALaterDeadline() {
+        wheel.schedule(0, a, TICK);
+        wheel.schedule(0, b, TICK * (WHEEL_SIZE + 1));
+        recorder.onFire = new Runnable() {
+            @Override
+            public void run() {
+                assertTrue(wheel.cancel(0, b));
+            }
+        };
+        ticks(3 * WHEEL_SIZE);
+        assertEquals(1, recorder.fired.size());
+        assertSame(a, recorder.fired.get(0));
+    }
+
+    @Test
+    public void rescheduleDuringTick() {
+        wheel.schedule(0, a, TICK);
+        wheel.schedule(0, b, TICK);
+        //the first one fired pushes the other back
+        recorder.onFire = new Runnable() {
+            @Override
+            public void run() {
+                if(recorder.fired.size() == 1){
+                    NatedAddress other = recorder.fired.get(0) == a ? b : a;
+                    wheel.schedule(0, other, TICK * 2);
+                }
+            }
+        };
+        wheel.tick(recorder);
+        assertEquals(1, recorder.fired.size());
+        NatedAddress other = recorder.fired.get(0) == a ? b : a;
+        assertTrue(wheel.isScheduled(0, other));
+        assertEquals(2, tickUntilFired(other));
+    }
+
+    @Test
+    public void listenerCanScheduleItselfAgain() {
+        wheel.schedule(0, a, TICK);
+        recorder.onFire = new Runnable() {
+            @Override
+            public void run() {
+                if(recorder.fired.size() < 3){
+                    wheel.schedule(0, a, TICK);
+                }
+            }
+        };
+        ticks(10);
+        assertEquals(3, recorder.fired.size());
+        assertFalse(wheel.isScheduled(0, a));
+    }
+
+    /*
+
+
+    SUPPORTING CODE
+
+
+    */
+
+    //ticks until address fires, fails if it does not within a few rounds
+    private int tickUntilFired(NatedAddress address) {
+        int before = count(address);
+        for(int i = 1; i <= 4 * WHEEL_SIZE + 8; i++){
+            wheel.tick(recorder);
+            if(count(address) > before){
+                return i;
+            }
+        }
+        fail(address + " never fired");
+        return -1;
+    }
+
+    private void ticks(int n) {
+        for(int i = 0; i < n; i++){
+            wheel.tick(recorder);
+        }
+    }
+
+    private int count(NatedAddress address) {
+        int n = 0;
+        for(NatedAddress fired : recorder.fired){
+            if(fired == address){
+                n++;
+            }
+        }
+        return n;
+    }
+
+    private static NatedAddress address(int id) throws Exception {
+        return new BasicNatedAddress(new BasicAddress(InetAddress.getByName("127.0.0.1"), 12345, id));
+    }
+
+    private static class Recorder implements TimerWheel.Listener {
+
+        private final ArrayList<NatedAddress> fired = new ArrayList<NatedAddress>();
+        private final ArrayList<Integer> kinds = new ArrayList<Integer>();
+        private Runnable onFire;
+
+        @Override
+        public void expired(int kind, NatedAddress address) {
+            fired.add(address);
+            kinds.add(kind);
+            if(onFire != null){
+                onFire.run();
+            }
+        }
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package se.kth.swim.msg.net;
+
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import se.kth.swim.msg.Ping;
+import se.kth.swim.msg.Shuffle;
+import se.kth.swim.msg.Snapshot;
+import se.kth.swim.msg.Status;
+import se.kth.swim.msg.StatusAck;
+import se.kth.swim.msg.Sync;
+import se.sics.p2ptoolbox.util.network.NatType;
+import se.sics.p2ptoolbox.util.network.NatedAddress;
+import se.sics.p2ptoolbox.util.network.impl.BasicAddress;
+import se.sics.p2ptoolbox.util.network.impl.BasicNatedAddress;
+
+/**
+ * Every message type must come out of decode(encode(msg)) exactly as it went in.
+ */
+public class NetMsgCodecTest {
+
+    private NetMsgCodec codec;
+    private NatedAddress open1;
+    private NatedAddress open2;
+    private NatedAddress open3;
+    private NatedAddress nated;
+
+    @Before
+    public void setUp() throws Exception {
+        codec = new NetMsgCodec(new ByteBufferPool(64 * 1024, 4));
+        open1 = open(1);
+        open2 = open(2);
+        open3 = open(3);
+        nated = nated(10, open1, open2);
+    }
+
+    @Test
+    public void ping() {
+        assertGossip(roundTrip(new NetPing(open1, nated, gossip())));
+    }
+
+    @Test
+    public void pong() {
+        assertGossip(roundTrip(new NetPong(nated, open1, gossip())));
+    }
+
+    @Test
+    public void pingReq() {
+        NetPingReq decoded = (NetPingReq) roundTrip(new NetPingReq(open1, open2, nated, gossip(), 2500));
+        assertEquals(nated, decoded.getToPing());
+        assertEquals(2500, decoded.getTimeout());
+        assertGossip(decoded);
+    }
+
+    @Test
+    public void pingReqAck() {
+        NetPingReqAck decoded = (NetPingReqAck) roundTrip(new NetPingReqAck(open2, open1, nated, gossip()));
+        assertEquals(nated, decoded.getAckedNode());
+        assertGossip(decoded);
+    }
+
+    @Test
+    public void pingReqNack() {
+        NetPingReqNack decoded = (NetPingReqNack) roundTrip(new NetPingReqNack(open2, open1, nated, gossip()));
+        assertEquals(nated, decoded.getNackedNode());
+        assertGossip(decoded);
+    }
+
+    @Test
+    public void status() {
+        Status status = new Status(5, 40, 2, 1, 3, 7, 1000, 990);
+        status.seq = 12;
+        status.baseSeq = 9;
+        status.suspectsFrom = 4;
+        status.newSuspects = new int[]{10, 11};
+        status.deadFrom = 1;
+        status.newDead = new int[]{12};
+        Status decoded = ((NetStatus) roundTrip(new NetStatus(nated, open1, status))).getContent();
+        assertArrayEquals(status.values(), decoded.values());
+        assertEquals(status.seq, decoded.seq);
+        assertEquals(status.baseSeq, decoded.baseSeq);
+        assertEquals(status.suspectsFrom, decoded.suspectsFrom);
+        assertArrayEquals(status.newSuspects, decoded.newSuspects);
+        assertEquals(status.deadFrom, decoded.deadFrom);
+        assertArrayEquals(status.newDead, decoded.newDead);
+    }
+
+    @Test
+    public void statusAck() {
+        StatusAck decoded = ((NetStatusAck) roundTrip(new NetStatusAck(open1, nated, new StatusAck(42, true)))).getContent();
+        assertEquals(42, decoded.seq);
+        assertTrue(decoded.resync);
+    }
+
+    @Test
+    public void syncDigest() {
+        int[] digest = {0, -1, Integer.MAX_VALUE, Integer.MIN_VALUE};
+        Sync decoded = ((NetSync) roundTrip(new NetSync(open1, open2, new Sync(4, digest)))).getContent();
+        assertEquals(4, decoded.buckets);
+        assertArrayEquals(digest, decoded.digest);
+        assertNull(decoded.wanted);
+        assertNull(decoded.infoList);
+    }
+
+    @Test
+    public void syncEntries() {
+        NetSync decoded = (NetSync) roundTrip(new NetSync(open1, open2, new Sync(8, gossip(), new int[]{0, 5, 7})));
+        assertEquals(8, decoded.getContent().buckets);
+        assertNull(decoded.getContent().digest);
+        assertArrayEquals(new int[]{0, 5, 7}, decoded.getContent().wanted);
+        assertGossip(decoded);
+
+        decoded = (NetSync) roundTrip(new NetSync(open1, open2, new Sync(8, gossip(), null)));
+        assertNull(decoded.getContent().wanted);
+        assertGossip(decoded);
+    }
+
+    @Test
+    public void join() {
+        assertGossip(roundTrip(new NetJoin(nated, open1, gossip())));
+    }
+
+    @Test
+    public void joinChunk() {
+        NetJoinChunk decoded = (NetJoinChunk) roundTrip(new NetJoinChunk(open1, nated, new Snapshot(3, 9, gossip())));
+        assertEquals(3, decoded.getContent().chunk);
+        assertEquals(9, decoded.getContent().chunks);
+        assertGossip(decoded);
+    }
+
+    @Test
+    public void shuffle() {
+        NetShuffle decoded = (NetShuffle) roundTrip(new NetShuffle(open1, open2, new Shuffle(gossip(), true)));
+        assertTrue(decoded.getContent().reply);
+        assertGossip(decoded);
+        decoded = (NetShuffle) roundTrip(new NetShuffle(open1, open2, new Shuffle(gossip(), false)));
+        assertFalse(decoded.getContent().reply);
+    }
+
+    @Test
+    public void disconnect() {
+        assertGossip(roundTrip(new NetDisconnect(open2, nated, gossip())));
+    }
+
+    @Test
+    public void missingGossip() {
+        NetPing decoded = (NetPing) roundTrip(new NetPing(open1, open2, null));
+        assertNull(decoded.getContent().infoList);
+        decoded = (NetPing) roundTrip(new NetPing(open1, open2, new ArrayList<InfoPiggyback>()));
+        assertEquals(0, decoded.getContent().infoList.size());
+    }
+
+    @Test
+    public void batch() {
+        ArrayList<NetMsg<?>> messages = new ArrayList<NetMsg<?>>();
+        messages.add(new NetPing(open1, nated, gossip()));
+        messages.add(new NetPingReq(open1, nated, open3, gossip()));
+        messages.add(new NetJoinChunk(open1, nated, new Snapshot(0, 1, gossip())));
+        NetBatch decoded = (NetBatch) roundTrip(new NetBatch(open1, nated, messages));
+        assertEquals(3, decoded.getContent().size());
+        assertGossip(decoded.getContent().get(0));
+        assertTrue(decoded.getContent().get(0) instanceof NetPing);
+        assertEquals(open3, ((NetPingReq) decoded.getContent().get(1)).getToPing());
+        assertEquals(0, ((NetJoinChunk) decoded.getContent().get(2)).getContent().chunk);
+    }
+
+    @Test
+    public void messageLargerThanThePooledBuffers() throws Exception {
+        codec = new NetMsgCodec(new ByteBufferPool(16, 4));
+        ArrayList<InfoPiggyback> gossip = new ArrayList<InfoPiggyback>();
+        for (int id = 100; id < 400; id++) {
+            gossip.add(new InfoPiggyback(InfoType.ALIVENODE, open(id), id));
+        }
+        NetPing decoded = (NetPing) roundTrip(new NetPing(open1, open2, gossip));
+        ArrayList<InfoPiggyback> received = decoded.getContent().infoList;
+        assertEquals(gossip.size(), received.size());
+        assertEquals(gossip.get(299).getInfoTarget(), received.get(299).getInfoTarget());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void emptyBatch() {
+        codec.decode(ByteBuffer.wrap(new byte[]{(byte) 8, 0}));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownType() {
+        ByteBuffer buf = codec.encode(new NetPing(open1, open2, gossip()));
+        buf.put(buf.position(), (byte) 99);
+        codec.decode(buf);
+    }
+
+    /*
+
+
+    SUPPORTING CODE
+
+
+    */
+
+    private NetMsg<?> roundTrip(NetMsg<?> msg) {
+        ByteBuffer buf = codec.encode(msg);
+        NetMsg<?> decoded = codec.decode(buf);
+        assertEquals(0, buf.remaining());
+        codec.release(buf);
+        assertEquals(msg.getClass(), decoded.getClass());
+        assertEquals(msg.getHeader().getSource(), decoded.getHeader().getSource());
+        assertEquals(msg.getHeader().getDestination(), decoded.getHeader().getDestination());
+        return decoded;
+    }
+
+    //every info type, nated targets, falling and large incarnations and two
+    //versions of the same nated node with different parents
+    private ArrayList<InfoPiggyback> gossip() {
+        ArrayList<InfoPiggyback> gossip = new ArrayList<InfoPiggyback>();
+        gossip.add(new InfoPiggyback(InfoType.NEWNODE, open3, 0));
+        gossip.add(new InfoPiggyback(InfoType.ALIVENODE, nated, 7));
+        gossip.add(new InfoPiggyback(InfoType.SUSPECTEDNODE, open2, 3, 42));
+        gossip.add(new InfoPiggyback(InfoType.SUSPECTEDNODE, open3, 3));
+        gossip.add(new InfoPiggyback(InfoType.DEADNODE, open1, Integer.MAX_VALUE));
+        try {
+            gossip.add(new InfoPiggyback(InfoType.ALIVENODE, nated(10, open3), 8));
+        } catch (Exception ex) {
+            throw new AssertionError(ex);
+        }
+        return gossip;
+    }
+
+    private void assertGossip(NetMsg<?> decoded) {
+        ArrayList<InfoPiggyback> sent = gossip();
+        ArrayList<InfoPiggyback> received = ((Ping) decoded.getContent()).infoList;
+        assertEquals(sent.size(), received.size());
+        for (int i = 0; i < sent.size(); i++) {
+            assertEquals(sent.get(i).getInfoType(), received.get(i).getInfoType());
+            assertEquals(sent.get(i).getInfoTarget(), received.get(i).getInfoTarget());
+            assertEquals(sent.get(i).getIncarnationValue(), received.get(i).getIncarnationValue());
+            assertEquals(sent.get(i).getSuspecter(), received.get(i).getSuspecter());
+        }
+    }
+
+    private static NatedAddress open(int id) throws Exception {
+        return new BasicNatedAddress(new BasicAddress(InetAddress.getByName("127.0.0.1"), 12345, id));
+    }
+
+    private static NatedAddress nated(int id, NatedAddress... parents) throws Exception {
+        Set<NatedAddress> parentSet = new HashSet<NatedAddress>();
+        for (NatedAddress parent : parents) {
+            parentSet.add(parent);
+        }
+        return new BasicNatedAddress(new BasicAddress(InetAddress.getByName("127.0.0.2"), 12345, id), NatType.NAT, parentSet);
+    }
+}